@@ -0,0 +1,16 @@
+package it.cnr.isti.wnlab.indoornavigation.android;
+
+import android.util.Log;
+
+import it.cnr.isti.wnlab.indoornavigation.log.DebugLog;
+
+/**
+ * Writes the core's debug messages to Android's log.
+ */
+public class AndroidLogSink implements DebugLog.Sink {
+
+    @Override
+    public void d(String tag, String message) {
+        Log.d(tag, message);
+    }
+}
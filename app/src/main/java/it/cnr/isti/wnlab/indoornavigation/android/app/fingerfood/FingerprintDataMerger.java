@@ -1,6 +1,5 @@
 package it.cnr.isti.wnlab.indoornavigation.android.app.fingerfood;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
@@ -8,6 +7,8 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 
+import it.cnr.isti.wnlab.indoornavigation.utils.io.CsvTokenizer;
+
 /**
  * Class that merges fingerprints into a map.
  */
@@ -24,25 +25,22 @@ public abstract class FingerprintDataMerger {
             // For each file, add the measures to the map
             for(File f : filesWithData) {
                 try (
-                    BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f)))
+                    CsvTokenizer csv = new CsvTokenizer(new InputStreamReader(new FileInputStream(f)))
                 ) {
                     // Get the label that starts each measure
                     String label = getLabel();
 
                     // For each line, add points and relative measures to the data structure
-                    String line;
-                    while((line = br.readLine()) != null) {
-                        // Split comma-separated values
-                        String[] splitted = line.split(",");
-
+                    while(csv.nextRecord()) {
                         // Behaviour depends on the first comma-separated value
-                        if(label.equals(splitted[0])) {
+                        if(csv.fieldEquals(label)) {
                             // If the line starts with the label, it's a measure
-                            insertMeasurement(splitted);
+                            csv.skipField();
+                            insertMeasurement(csv);
                         } else {
                             // Else it's a coordinate indicator
-                            float x = Float.parseFloat(splitted[0]);
-                            float y = Float.parseFloat(splitted[1]);
+                            float x = csv.nextFloat();
+                            float y = csv.nextFloat();
 
                             setCoordinates(x,y);
                         }
@@ -76,9 +74,9 @@ public abstract class FingerprintDataMerger {
 
     /**
      * Insert a new measure in the current point's values.
-     * @param commaSeparatedValues
+     * @param values The measure's line, positioned after the label.
      */
-    protected abstract void insertMeasurement(String[] commaSeparatedValues);
+    protected abstract void insertMeasurement(CsvTokenizer values) throws IOException;
 
     /**
      * Merges the values for each point. Equals to call merge(null).
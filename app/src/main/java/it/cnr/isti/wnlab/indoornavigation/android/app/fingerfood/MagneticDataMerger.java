@@ -9,6 +9,8 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.Map;
 
+import it.cnr.isti.wnlab.indoornavigation.utils.io.CsvTokenizer;
+
 /**
  * Specialized merger for magnetic fingerprints.
  */
@@ -44,15 +46,19 @@ public class MagneticDataMerger extends FingerprintDataMerger {
         // Else, the coordinate exists and the associated array is assigned to "values".
     }
 
+    /**
+     * Expected line format, after the "M" label:
+     * timestamp,mx,my,mz
+     * @param commaSeparatedValues Values of a CSV text's line.
+     */
     @Override
-    protected void insertMeasurement(String[] commaSeparatedValues) {
+    protected void insertMeasurement(CsvTokenizer commaSeparatedValues) throws IOException {
         if (values != null) {
             // Parse values
-            float mx = Float.parseFloat(commaSeparatedValues[2]);
-            float my = Float.parseFloat(commaSeparatedValues[3]);
-            float mz = Float.parseFloat(commaSeparatedValues[4]);
-
-            Log.d("MAGFP", "Values != null, inserting " + mx + "," + my + "," + mz);
+            commaSeparatedValues.skipField();
+            float mx = commaSeparatedValues.nextFloat();
+            float my = commaSeparatedValues.nextFloat();
+            float mz = commaSeparatedValues.nextFloat();
 
             // Update the coordinate measurements
             values[0] += mx;
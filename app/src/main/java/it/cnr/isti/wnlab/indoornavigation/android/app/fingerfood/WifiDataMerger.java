@@ -13,6 +13,7 @@ import java.util.Map;
 import it.cnr.isti.wnlab.indoornavigation.fingerprint.WifiFingerprintMap;
 import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
 import it.cnr.isti.wnlab.indoornavigation.types.wifi.SingleAccessPoint;
+import it.cnr.isti.wnlab.indoornavigation.utils.io.CsvTokenizer;
 
 /**
  * Specialized merger for wifi fingerprints.
@@ -46,21 +47,19 @@ public class WifiDataMerger extends FingerprintDataMerger {
     }
 
     /**
-     * Expected array format:
-     * commaSeparatedValues[0] = "W"
-     * cSV[1+2n] = BSSID
-     * cSV[2+2n] = RSSI
+     * Expected line format, after the "W" label:
+     * BSSID1,RSSI1,BSSID2,RSSI2,...
      * @param commaSeparatedValues Values of a CSV text's line.
      */
     @Override
-    protected void insertMeasurement(String[] commaSeparatedValues)
-            throws NullPointerException, NumberFormatException {
+    protected void insertMeasurement(CsvTokenizer commaSeparatedValues)
+            throws IOException {
         if (values != null) {
 
-            for(int i = 1; i < commaSeparatedValues.length; i+=2) {
+            while(commaSeparatedValues.hasNextField()) {
                 // Parse (bssid,rssi) pair
-                String bssid = commaSeparatedValues[i];
-                int rssi = Integer.parseInt(commaSeparatedValues[i+1]);
+                String bssid = commaSeparatedValues.nextString();
+                int rssi = commaSeparatedValues.nextInt();
 
                 // Insert or update value
                 Integer[] prev;
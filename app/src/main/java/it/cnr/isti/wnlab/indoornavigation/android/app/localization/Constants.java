@@ -55,5 +55,40 @@ public final class Constants {
     public static final int PF_PARTICLES_NUMBER = 200;
     public static final int PF_WIFI_DISTANCES_K = 3;
     public static final int PF_MAGNETIC_DISTANCES_K = 3;
+    // Particles are moved in parallel from this number on
+    public static final int PF_PARALLEL_THRESHOLD = 2048;
+    // Fingerprints weight particles instead of killing them. Off for the kill-and-duplicate filter.
+    public static final boolean PF_LIKELIHOOD_WEIGHTING = false;
+    // Adaptive particles number (KLD-sampling) instead of PF_PARTICLES_NUMBER. Off for a fixed
+    // number of particles.
+    public static final boolean PF_KLD_SAMPLING = false;
+    public static final float PF_KLD_BIN_SIZE = 0.5f;
+    public static final float PF_KLD_EPSILON = 0.05f;
+    public static final int PF_KLD_MIN_PARTICLES = 50;
+    public static final int PF_KLD_MAX_PARTICLES = 2000;
+    // Particles are bounded so that a step lasts about this (ms), never fewer than the floor.
+    // 0 for no bound.
+    public static final long PF_TARGET_LATENCY = 0;
+    public static final int PF_BUDGET_FLOOR = 50;
+
+    /*
+     * Histogram Filter
+     */
+
+    // Side of the cells (m) and uncertainty of a step along each axis (m)
+    public static final float HF_CELL_SIZE = 0.25f;
+    public static final float HF_MOTION_STANDARD_DEVIATION = 0.3f;
+    public static final int HF_WIFI_DISTANCES_K = 3;
+    public static final int HF_MAGNETIC_DISTANCES_K = 3;
+    // Rows are processed in parallel from this number of cells on
+    public static final int HF_PARALLEL_THRESHOLD = 16384;
+
+    /*
+     * Fingerprints
+     */
+
+    // Compute K-NN in background as soon as a measurement arrives: strategies then get the last
+    // completed result, that may be stale. Off for on-demand K-NN.
+    public static final boolean FP_EAGER_KNN = false;
 
 }
@@ -293,6 +293,12 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 gyroToggle.setChecked(true);
                 wifiToggle.setChecked(true);
                 return SimpleIndoorService.Strategies.PF_STRATEGY;
+            case R.id.radio_histogramfilter:
+                accToggle.setChecked(true);
+                magToggle.setChecked(true);
+                gyroToggle.setChecked(true);
+                wifiToggle.setChecked(true);
+                return SimpleIndoorService.Strategies.HF_STRATEGY;
         }
         throw new RuntimeException("No strategy is specified.");
     }
@@ -10,15 +10,20 @@ import android.os.IBinder;
 import android.widget.Toast;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import it.cnr.isti.wnlab.indoornavigation.BuildConfig;
 import it.cnr.isti.wnlab.indoornavigation.R;
+import it.cnr.isti.wnlab.indoornavigation.android.AndroidLogSink;
 import it.cnr.isti.wnlab.indoornavigation.android.compass.RelativeCompass;
 import it.cnr.isti.wnlab.indoornavigation.android.handlers.AccelerometerHandler;
 import it.cnr.isti.wnlab.indoornavigation.android.handlers.GyroscopeHandler;
 import it.cnr.isti.wnlab.indoornavigation.android.handlers.InvalidSensorException;
 import it.cnr.isti.wnlab.indoornavigation.android.handlers.MagnetometerHandler;
 import it.cnr.isti.wnlab.indoornavigation.android.handlers.WifiScanner;
-import it.cnr.isti.wnlab.indoornavigation.android.stepdetection.FasterStepDetector;
+import it.cnr.isti.wnlab.indoornavigation.utils.stepdetection.FasterStepDetector;
 import it.cnr.isti.wnlab.indoornavigation.Compass;
 import it.cnr.isti.wnlab.indoornavigation.IndoorLocalizationStrategy;
 import it.cnr.isti.wnlab.indoornavigation.IndoorPosition;
@@ -33,8 +38,12 @@ import it.cnr.isti.wnlab.indoornavigation.fingerprint.DistancesMap;
 import it.cnr.isti.wnlab.indoornavigation.fingerprint.MagneticFingerprintMap;
 import it.cnr.isti.wnlab.indoornavigation.fingerprint.PositionDistance;
 import it.cnr.isti.wnlab.indoornavigation.fingerprint.WifiFingerprintMap;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.KldResamplingStrategy;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.ParticleFilterMetrics;
+import it.cnr.isti.wnlab.indoornavigation.log.DebugLog;
 import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
 import it.cnr.isti.wnlab.indoornavigation.utils.localization.fingerprint.FingerprintStrategy;
+import it.cnr.isti.wnlab.indoornavigation.utils.localization.histogramfilter.HistogramFilterStrategy;
 import it.cnr.isti.wnlab.indoornavigation.utils.localization.kalmanfilter.KalmanFilterStrategy;
 import it.cnr.isti.wnlab.indoornavigation.utils.localization.particlefilter.ParticleFilterStrategy;
 import it.cnr.isti.wnlab.indoornavigation.utils.localization.pdr.PDRStrategy;
@@ -182,6 +191,15 @@ public class SimpleIndoorService extends Service implements Observer<IndoorPosit
     private MagneticFingerprintMap magFing;
     private DistancesMap<XYPosition, MagneticField> magDist;
 
+    // Background K-NN (null if lazy)
+    private ExecutorService knnExecutor;
+
+    // Parallel particle filter update
+    private ExecutorService pfExecutor;
+
+    // Parallel histogram filter update
+    private ExecutorService hfExecutor;
+
     /*
      * Constants and strategy selection
      */
@@ -191,7 +209,8 @@ public class SimpleIndoorService extends Service implements Observer<IndoorPosit
         WIFIFP_STRATEGY,
         MAGFP_STRATEGY,
         PF_STRATEGY,
-        KF_STRATEGY
+        KF_STRATEGY,
+        HF_STRATEGY
     }
 
     private Strategies chosenStrategy;
@@ -201,6 +220,8 @@ public class SimpleIndoorService extends Service implements Observer<IndoorPosit
      **********************************************/
 
     private void initialize() {
+        // Core's debug messages only go to logcat in debug builds
+        DebugLog.setSink(BuildConfig.DEBUG ? new AndroidLogSink() : null);
         initializeParameters();
         initializeFilesAndDirectories();
         initializeHandlers();
@@ -221,6 +242,10 @@ public class SimpleIndoorService extends Service implements Observer<IndoorPosit
                 this.kfWifiDistancesK = Constants.KF_WIFI_DISTANCES_K;
                 this.kfMagneticDistancesK = Constants.KF_MAGNETIC_DISTANCES_K;
                 break;
+            case HF_STRATEGY:
+                this.pfWifiDistancesK = Constants.HF_WIFI_DISTANCES_K;
+                this.pfMagneticDistancesK = Constants.HF_MAGNETIC_DISTANCES_K;
+                break;
             case PF_STRATEGY:
             case PDR_STRATEGY:
             case WIFIFP_STRATEGY:
@@ -329,6 +354,10 @@ public class SimpleIndoorService extends Service implements Observer<IndoorPosit
                 // Localization with PF: it depends on PDR and fingerprints
                 initPFStrategy();
                 break;
+            case HF_STRATEGY:
+                // Localization with HF: it depends on PDR and fingerprints
+                initHFStrategy();
+                break;
         }
 
         // Observe position updates (and actually make the whole thing start running)
@@ -405,7 +434,7 @@ public class SimpleIndoorService extends Service implements Observer<IndoorPosit
         initWifiFingerprint();
         initMagneticFingerprint();
         // Initialize strategy instance
-        strategy = new ParticleFilterStrategy(
+        ParticleFilterStrategy pfStrategy = new ParticleFilterStrategy(
                 // Initial position and particles number
                 position,
                 Constants.PF_PARTICLES_NUMBER,
@@ -414,6 +443,63 @@ public class SimpleIndoorService extends Service implements Observer<IndoorPosit
                 pdr,
                 wiFing, wifiDist,
                 magFing, magDist);
+        pfStrategy.setLikelihoodWeighting(Constants.PF_LIKELIHOOD_WEIGHTING);
+        if(Constants.PF_KLD_SAMPLING)
+            pfStrategy.setResamplingStrategy(new KldResamplingStrategy(
+                    Constants.PF_KLD_BIN_SIZE,
+                    Constants.PF_KLD_EPSILON,
+                    KldResamplingStrategy.DEFAULT_UPPER_QUANTILE,
+                    Constants.PF_KLD_MIN_PARTICLES,
+                    Constants.PF_KLD_MAX_PARTICLES));
+        // Latency bound on the particles number, if enabled
+        if(Constants.PF_TARGET_LATENCY > 0)
+            pfStrategy.setLatencyTarget(
+                    Constants.PF_TARGET_LATENCY,
+                    Constants.PF_BUDGET_FLOOR,
+                    (Constants.PF_KLD_SAMPLING ? Constants.PF_KLD_MAX_PARTICLES : Constants.PF_PARTICLES_NUMBER));
+        // Figures of every step, for debug builds only
+        if(DebugLog.isEnabled())
+            pfStrategy.setMetrics(new ParticleFilterMetrics() {
+                @Override
+                public void onParticlesNumber(int particles) {
+                    DebugLog.d("PF", "Particles: " + particles);
+                }
+
+                @Override
+                public void onBudget(int budget, long latency) {
+                    DebugLog.d("PF", "Step latency: " + (latency / 1000000L) + " ms, next budget: " + budget);
+                }
+            });
+        // Parallel update for big particle sets (the threshold is checked at every step)
+        int cores = Runtime.getRuntime().availableProcessors();
+        if(cores > 1) {
+            pfExecutor = Executors.newFixedThreadPool(cores);
+            pfStrategy.setExecutor(pfExecutor, Constants.PF_PARALLEL_THRESHOLD);
+        }
+        strategy = pfStrategy;
+    }
+
+    private void initHFStrategy() {
+        // Initialize middle components
+        initStepDetection();
+        initPDR();
+        initFingerprints();
+        // Initialize strategy instance
+        HistogramFilterStrategy hfStrategy = new HistogramFilterStrategy(
+                position,
+                floorMap,
+                Constants.HF_CELL_SIZE,
+                Constants.HF_MOTION_STANDARD_DEVIATION,
+                pdr,
+                wifiDist,
+                magDist);
+        // Parallel update for big grids
+        int cores = Runtime.getRuntime().availableProcessors();
+        if(cores > 1) {
+            hfExecutor = Executors.newFixedThreadPool(cores);
+            hfStrategy.setExecutor(hfExecutor, Constants.HF_PARALLEL_THRESHOLD);
+        }
+        strategy = hfStrategy;
     }
 
     private void initStepDetection() {
@@ -428,14 +514,25 @@ public class SimpleIndoorService extends Service implements Observer<IndoorPosit
      * Loads fingerprint databases and instantiates the objects.
      */
     private void initFingerprints() {
+        // Executor for eager K-NN
+        if(Constants.FP_EAGER_KNN)
+            knnExecutor = Executors.newSingleThreadExecutor();
+
+        // Load both maps, nothing can localize without them
+        try {
+            wiFing = (new WifiFingerprintMap.Builder()).build(wiFile);
+            magFing = (new MagneticFingerprintMap.Builder()).build(magFile);
+        } catch(IOException e) {
+            throw new IllegalStateException("Can't load the fingerprint maps", e);
+        }
+
         // Wifi fingerprint
-        wiFing = (new WifiFingerprintMap.Builder()).build(wiFile);
-        wifiDist = new DistancesMap<>(wiFing, (chosenStrategy == Strategies.KF_STRATEGY ? kfWifiDistancesK : pfWifiDistancesK), null);
+        wifi.setDictionary(wiFing.getDictionary());
+        wifiDist = new DistancesMap<>(wiFing, (chosenStrategy == Strategies.KF_STRATEGY ? kfWifiDistancesK : pfWifiDistancesK), null, knnExecutor);
         wifi.register(wifiDist);
 
         // Magnetic fingerprint
-        magFing = (new MagneticFingerprintMap.Builder()).build(magFile);
-        magDist = new DistancesMap<>(magFing, (chosenStrategy == Strategies.KF_STRATEGY ? kfMagneticDistancesK : pfMagneticDistancesK), null);
+        magDist = new DistancesMap<>(magFing, (chosenStrategy == Strategies.KF_STRATEGY ? kfMagneticDistancesK : pfMagneticDistancesK), null, knnExecutor);
         mh.register(magDist);
     }
 
@@ -477,6 +574,18 @@ public class SimpleIndoorService extends Service implements Observer<IndoorPosit
             wifi.unregister(wifiDist);
         if(magDist != null)
             mh.unregister(magDist);
+        if(knnExecutor != null) {
+            knnExecutor.shutdownNow();
+            knnExecutor = null;
+        }
+        if(pfExecutor != null) {
+            pfExecutor.shutdownNow();
+            pfExecutor = null;
+        }
+        if(hfExecutor != null) {
+            hfExecutor.shutdownNow();
+            hfExecutor = null;
+        }
         // Set flag
         localizing = false;
     }
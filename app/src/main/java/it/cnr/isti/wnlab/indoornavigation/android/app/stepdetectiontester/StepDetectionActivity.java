@@ -14,7 +14,7 @@ import android.widget.TextView;
 
 import it.cnr.isti.wnlab.indoornavigation.R;
 import it.cnr.isti.wnlab.indoornavigation.android.handlers.AccelerometerHandler;
-import it.cnr.isti.wnlab.indoornavigation.android.stepdetection.FasterStepDetector;
+import it.cnr.isti.wnlab.indoornavigation.utils.stepdetection.FasterStepDetector;
 import it.cnr.isti.wnlab.indoornavigation.observer.Observer;
 import it.cnr.isti.wnlab.indoornavigation.types.Step;
 
@@ -3,20 +3,18 @@ package it.cnr.isti.wnlab.indoornavigation.android.graphics;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 
-import java.util.Collection;
-
-import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.PositionParticle;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.ParticleSet;
 
 /**
  * A drawable for Particle Filter's particles that represent positions.
  */
 public class ParticlesDrawable implements IndoorDrawable {
 
-    private Collection<PositionParticle> particles;
+    private ParticleSet particles;
     private Paint paint;
     private float radius;
 
-    public ParticlesDrawable(Collection<PositionParticle> particles, int color) {
+    public ParticlesDrawable(ParticleSet particles, int color) {
         // Set particles
         this.particles = particles;
         // Set width and height
@@ -29,7 +27,8 @@ public class ParticlesDrawable implements IndoorDrawable {
 
     @Override
     public void draw(Canvas canvas) {
-        for(PositionParticle p : particles)
-            canvas.drawCircle(p.getX(),p.getY(),radius,paint);
+        for(int i = 0; i < particles.size(); i++)
+            if(particles.isAlive(i))
+                canvas.drawCircle(particles.getX(i),particles.getY(i),radius,paint);
     }
 }
@@ -11,6 +11,7 @@ import java.util.TimerTask;
 
 import it.cnr.isti.wnlab.indoornavigation.observer.DataEmitter;
 import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.BssidDictionary;
 import it.cnr.isti.wnlab.indoornavigation.types.wifi.SingleAccessPoint;
 
 /**
@@ -23,6 +24,7 @@ public class WifiScanner extends DataEmitter<AccessPoints> {
     private long mRate;
     private long mLastTimestamp;
     private Handler mHandler;
+    private volatile BssidDictionary mDictionary;
 
     private boolean active;
 
@@ -59,8 +61,11 @@ public class WifiScanner extends DataEmitter<AccessPoints> {
                     for (ScanResult res : results)
                         aps.add(new SingleAccessPoint(res.BSSID, res.level));
 
-                    // Create the AccessPoints instance to return
-                    final AccessPoints data = new AccessPoints(aps, mLastTimestamp);
+                    // Create the AccessPoints instance to return (encoded here, off the main thread)
+                    BssidDictionary dictionary = mDictionary;
+                    final AccessPoints data = (dictionary != null ?
+                            new AccessPoints(aps, mLastTimestamp, dictionary) :
+                            new AccessPoints(aps, mLastTimestamp));
 
                     // Notify observers on main thread
                     mHandler.post(new Runnable() {
@@ -107,4 +112,12 @@ public class WifiScanner extends DataEmitter<AccessPoints> {
         mRate = newRate;
     }
 
+    /**
+     * @param dictionary The dictionary used for encoding new scans (see AccessPoints.encode).
+     *                   It can be null.
+     */
+    public void setDictionary(BssidDictionary dictionary) {
+        mDictionary = dictionary;
+    }
+
 }
@@ -1,8 +0,0 @@
-package it.cnr.isti.wnlab.indoornavigation.map;
-
-/**
- * A room in an indoor building.
- */
-public abstract class RoomMap implements XYMap {
-
-}
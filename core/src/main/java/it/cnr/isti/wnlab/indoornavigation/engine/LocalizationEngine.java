@@ -0,0 +1,199 @@
+package it.cnr.isti.wnlab.indoornavigation.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import it.cnr.isti.wnlab.indoornavigation.IndoorLocalizationStrategy;
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.DistancesMap;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.MagneticFingerprintMap;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.WifiFingerprintMap;
+import it.cnr.isti.wnlab.indoornavigation.map.FloorMap;
+import it.cnr.isti.wnlab.indoornavigation.pdr.PDR;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+
+/**
+ * A headless engine localizing many devices at once, i.e. on a server receiving their data.
+ * <p>
+ * Every device has its own LocalizationSession, while the floor and the fingerprint maps are
+ * shared: they are only read, and can be queried by many threads at once. Sessions run on the
+ * engine's executor, each on one thread at a time. The default is a ForkJoinPool in async mode
+ * with a thread per processor: sessions' turns are independent tasks, and idle threads steal
+ * those of the busy ones. ForkJoinPool needs Java 7, or API 21 on Android; on older Android
+ * versions pass another executor.
+ */
+public class LocalizationEngine {
+
+    public static final int DEFAULT_DISTANCES_K = 3;
+
+    /**
+     * Builds the strategy of a new session.
+     */
+    public interface StrategyFactory {
+        /**
+         * @param initialPosition
+         * @param pdr The session's PDR.
+         * @param wifiDistances The session's Wifi K-NN.
+         * @param magneticDistances The session's magnetic K-NN.
+         * @return A strategy, not started yet.
+         */
+        IndoorLocalizationStrategy create(
+                XYPosition initialPosition,
+                PDR pdr,
+                DistancesMap<XYPosition, AccessPoints> wifiDistances,
+                DistancesMap<XYPosition, MagneticField> magneticDistances);
+    }
+
+    // Shared, read only
+    private final FloorMap floorMap;
+    private final WifiFingerprintMap wifiFingerprintMap;
+    private final MagneticFingerprintMap magneticFingerprintMap;
+
+    // Parameters of the new sessions
+    private final float stepLength;
+    private int wifiDistancesK = DEFAULT_DISTANCES_K;
+    private int magneticDistancesK = DEFAULT_DISTANCES_K;
+
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final ConcurrentMap<String, LocalizationSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * An engine with a work-stealing pool of a thread per processor, shut down with the engine.
+     */
+    public LocalizationEngine(
+            FloorMap floorMap,
+            WifiFingerprintMap wifiFingerprintMap,
+            MagneticFingerprintMap magneticFingerprintMap,
+            float stepLength
+    ) {
+        this(floorMap, wifiFingerprintMap, magneticFingerprintMap, stepLength,
+                new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), true);
+    }
+
+    /**
+     * @param floorMap
+     * @param wifiFingerprintMap
+     * @param magneticFingerprintMap
+     * @param stepLength The step length of the sessions' PDR.
+     * @param executor Runs the sessions. It is not shut down by the engine.
+     */
+    public LocalizationEngine(
+            FloorMap floorMap,
+            WifiFingerprintMap wifiFingerprintMap,
+            MagneticFingerprintMap magneticFingerprintMap,
+            float stepLength,
+            ExecutorService executor
+    ) {
+        this(floorMap, wifiFingerprintMap, magneticFingerprintMap, stepLength, executor, false);
+    }
+
+    private LocalizationEngine(
+            FloorMap floorMap,
+            WifiFingerprintMap wifiFingerprintMap,
+            MagneticFingerprintMap magneticFingerprintMap,
+            float stepLength,
+            ExecutorService executor,
+            boolean ownExecutor
+    ) {
+        if(floorMap == null || wifiFingerprintMap == null || magneticFingerprintMap == null)
+            throw new IllegalArgumentException("The floor and the fingerprint maps are required");
+        this.floorMap = floorMap;
+        this.wifiFingerprintMap = wifiFingerprintMap;
+        this.magneticFingerprintMap = magneticFingerprintMap;
+        this.stepLength = stepLength;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * @param wifiK K of the Wifi K-NN of new sessions.
+     * @param magneticK K of the magnetic K-NN of new sessions.
+     */
+    public void setDistancesK(int wifiK, int magneticK) {
+        this.wifiDistancesK = wifiK;
+        this.magneticDistancesK = magneticK;
+    }
+
+    /**
+     * Opens a session, replacing (and closing) the one with the same id, if any.
+     * @param id The device's id.
+     * @param initialPosition
+     * @param initialHeading In radians.
+     * @param factory Builds the session's strategy.
+     * @return The new session.
+     */
+    public LocalizationSession openSession(
+            String id, XYPosition initialPosition, float initialHeading, StrategyFactory factory) {
+        LocalizationSession session = new LocalizationSession(
+                id, executor, this, initialPosition, initialHeading, factory);
+        LocalizationSession previous = sessions.put(id, session);
+        if(previous != null)
+            previous.close();
+        return session;
+    }
+
+    /**
+     * @return The session of a device, or null.
+     */
+    public LocalizationSession getSession(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Closes the session of a device, if any.
+     * @param id
+     */
+    public void closeSession(String id) {
+        LocalizationSession session = sessions.remove(id);
+        if(session != null)
+            session.close();
+    }
+
+    /**
+     * @return The open sessions.
+     */
+    public Collection<LocalizationSession> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * Closes all the sessions, and stops the executor if the engine made it.
+     */
+    public void shutdown() {
+        for(String id : new ArrayList<>(sessions.keySet()))
+            closeSession(id);
+        if(ownExecutor)
+            executor.shutdown();
+    }
+
+    public FloorMap getFloorMap() {
+        return floorMap;
+    }
+
+    public WifiFingerprintMap getWifiFingerprintMap() {
+        return wifiFingerprintMap;
+    }
+
+    public MagneticFingerprintMap getMagneticFingerprintMap() {
+        return magneticFingerprintMap;
+    }
+
+    public float getStepLength() {
+        return stepLength;
+    }
+
+    public int getWifiDistancesK() {
+        return wifiDistancesK;
+    }
+
+    public int getMagneticDistancesK() {
+        return magneticDistancesK;
+    }
+}
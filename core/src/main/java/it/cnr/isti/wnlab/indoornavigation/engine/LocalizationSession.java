@@ -0,0 +1,265 @@
+package it.cnr.isti.wnlab.indoornavigation.engine;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.cnr.isti.wnlab.indoornavigation.IndoorLocalizationStrategy;
+import it.cnr.isti.wnlab.indoornavigation.IndoorPosition;
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.DistancesMap;
+import it.cnr.isti.wnlab.indoornavigation.observer.AbstractEmitter;
+import it.cnr.isti.wnlab.indoornavigation.observer.Observer;
+import it.cnr.isti.wnlab.indoornavigation.pdr.PDR;
+import it.cnr.isti.wnlab.indoornavigation.types.Heading;
+import it.cnr.isti.wnlab.indoornavigation.types.Step;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+import it.cnr.isti.wnlab.indoornavigation.utils.pdr.FixedStepPDR;
+
+/**
+ * The localization of a device: its PDR, its K-NN results and its strategy, fed with the
+ * device's data instead of Android sensors.
+ * <p>
+ * Data is queued and processed in order by at most one thread at a time, on the engine's
+ * executor: a session never blocks, nor waits for, another one. A busy session gives its thread
+ * back after a batch of data, so that the others get their turn.
+ */
+public class LocalizationSession {
+
+    // Data processed before giving the thread back
+    private static final int BATCH_SIZE = 64;
+
+    private final String id;
+    private final Executor executor;
+
+    // Inputs
+    private final InputEmitter<Heading> headings = new InputEmitter<>();
+    private final InputEmitter<Step> steps = new InputEmitter<>();
+    private final PDR pdr;
+    private final DistancesMap<XYPosition, AccessPoints> wifiDistances;
+    private final DistancesMap<XYPosition, MagneticField> magneticDistances;
+
+    // Output
+    private final IndoorLocalizationStrategy strategy;
+    private final Observer<IndoorPosition> positionObserver;
+    private volatile IndoorPosition position;
+    private volatile Observer<IndoorPosition> listener;
+    private final AtomicLong positions = new AtomicLong();
+
+    // Serial queue
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+
+    LocalizationSession(
+            String id,
+            Executor executor,
+            LocalizationEngine engine,
+            XYPosition initialPosition,
+            float initialHeading,
+            LocalizationEngine.StrategyFactory factory
+    ) {
+        this.id = id;
+        this.executor = executor;
+        this.pdr = new FixedStepPDR(headings, steps, engine.getStepLength(), initialHeading);
+        // Lazy K-NN: computed in this session's turn, when the strategy asks for it
+        this.wifiDistances = new DistancesMap<>(engine.getWifiFingerprintMap(), engine.getWifiDistancesK(), null);
+        this.magneticDistances = new DistancesMap<>(engine.getMagneticFingerprintMap(), engine.getMagneticDistancesK(), null);
+        this.position = new IndoorPosition(initialPosition, engine.getFloorMap().getFloor(), System.currentTimeMillis());
+        this.strategy = factory.create(initialPosition, pdr, wifiDistances, magneticDistances);
+        this.positionObserver = new Observer<IndoorPosition>() {
+            @Override
+            public void notify(IndoorPosition data) {
+                onPosition(data);
+            }
+        };
+
+        // Start in the session's turn, as everything else
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                strategy.register(positionObserver);
+            }
+        });
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @param listener Receives every new position, in the session's thread of the moment. It
+     *                 must not block.
+     */
+    public void setListener(Observer<IndoorPosition> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return The last position of the device.
+     */
+    public IndoorPosition getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The number of positions computed so far.
+     */
+    public long getPositionsCount() {
+        return positions.get();
+    }
+
+    /**
+     * @return The exception that stopped the session, or null.
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @param heading In radians.
+     * @param timestamp
+     */
+    public void onHeading(float heading, long timestamp) {
+        final Heading data = new Heading(heading, timestamp);
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                headings.emit(data);
+            }
+        });
+    }
+
+    /**
+     * A step of the device: the strategy computes a new position.
+     * @param timestamp
+     */
+    public void onStep(long timestamp) {
+        final Step data = new Step(timestamp);
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                steps.emit(data);
+            }
+        });
+    }
+
+    /**
+     * @param scan A Wifi scan, used from the next step on.
+     */
+    public void onWifiScan(final AccessPoints scan) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                wifiDistances.notify(scan);
+            }
+        });
+    }
+
+    /**
+     * @param field A magnetic field sample, used from the next step on.
+     */
+    public void onMagneticField(final MagneticField field) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                magneticDistances.notify(field);
+            }
+        });
+    }
+
+    /**
+     * Stops the strategy once the queued data is processed. Data sent later is ignored.
+     */
+    public void close() {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                strategy.unregister(positionObserver);
+                closed = true;
+            }
+        });
+    }
+
+    private void onPosition(IndoorPosition data) {
+        position = data;
+        positions.incrementAndGet();
+        Observer<IndoorPosition> l = listener;
+        if(l != null)
+            l.notify(data);
+    }
+
+    private void enqueue(Runnable task) {
+        if(closed)
+            return;
+        queue.add(task);
+        schedule();
+    }
+
+    /**
+     * Submits a drain unless one is already scheduled or running.
+     */
+    private void schedule() {
+        if(!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drain);
+            } catch(RejectedExecutionException e) {
+                // The engine is shutting down
+                scheduled.set(false);
+                closed = true;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            for(int i = 0; i < BATCH_SIZE && !closed; i++) {
+                Runnable task = queue.poll();
+                if(task == null)
+                    break;
+                task.run();
+            }
+        } catch(RuntimeException e) {
+            // A broken session stops, the others go on
+            failure = e;
+            closed = true;
+        } finally {
+            if(closed)
+                queue.clear();
+            scheduled.set(false);
+            // Data queued meanwhile, or left by the batch
+            schedule();
+        }
+    }
+
+    /**
+     * An emitter fed by hand.
+     */
+    private static class InputEmitter<T> extends AbstractEmitter<T> {
+
+        void emit(T data) {
+            notifyObservers(data);
+        }
+
+        @Override
+        protected void startEmission() {}
+
+        @Override
+        protected void stopEmission() {}
+    }
+}
@@ -0,0 +1,460 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.histogramfilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.filters.PositionFilter2D;
+import it.cnr.isti.wnlab.indoornavigation.map.XYMap;
+
+/**
+ * A histogram (discrete Bayes) filter: the probability of the position is kept in a dense grid
+ * of square cells, those whose center isn't valid in the map being always 0.
+ * <p>
+ * The prediction moves the probability by the step and blurs it with the step's uncertainty,
+ * as a separable convolution with a shifted Gaussian kernel: along the rows, then along the
+ * columns. The correction multiplies every cell by the measurement's likelihood, either given
+ * for every cell or evaluated by the filter in the cells' centers. Both cost the same at every
+ * step, and each row is computed on its own: with an executor, bands of rows of a large enough
+ * grid run in parallel.
+ */
+public class HistogramFilter implements PositionFilter2D {
+
+    /**
+     * The likelihood of a measurement, evaluated in the centers of the cells with some
+     * probability. In parallel mode it is called by many threads at once.
+     */
+    public interface Likelihood {
+        float getLikelihood(float x, float y);
+    }
+
+    // The kernel is cut at this many standard deviations
+    private static final float KERNEL_RADIUS = 3.f;
+
+    private final float originX, originY;
+    private final float cellSize;
+    private final int columns, rows;
+
+    // 1 for the valid cells, 0 for the others
+    private final float[] mask;
+
+    // Probabilities, and buffers for the passes
+    private float[] probabilities;
+    private float[] next;
+    private float[] rowPass;
+
+    // Kernels of the last prediction: weights of the cells at offsets [first, first+length)
+    private float[] kernelX = new float[0];
+    private float[] kernelY = new float[0];
+    private int firstX, firstY;
+    private int lengthX, lengthY;
+    // Output of kernel(): the first offset and the length of the kernel
+    private int kernelFirst;
+    private int kernelLength;
+
+    // Likelihood of the last correction, in every cell or as a function
+    private float[] likelihood;
+    private Likelihood likelihoodFunction;
+
+    private XYPosition position;
+
+    // Parallel mode
+    private ExecutorService executor;
+    private int parallelThreshold;
+    private final List<BandTask> tasks = new ArrayList<>();
+    private final int bands;
+    private final double[] bandSums;
+    // Weighted sums of the cells' centers (in cells) per band, from the normalization
+    private final double[] bandMeansX;
+    private final double[] bandMeansY;
+
+    // Passes over the rows
+    private static final int ROWS_PASS = 0;
+    private static final int COLUMNS_PASS = 1;
+    private static final int CORRECTION_PASS = 2;
+    private static final int NORMALIZATION_PASS = 3;
+    private int pass;
+    private float norm;
+
+    /**
+     * @param map Cells whose center is not valid have no probability.
+     * @param originX x of the grid's lower left corner.
+     * @param originY y of the grid's lower left corner.
+     * @param cellSize Side of the cells, in meters.
+     * @param columns
+     * @param rows
+     * @param initialPosition All the probability starts in its cell.
+     */
+    public HistogramFilter(
+            XYMap map,
+            float originX, float originY,
+            float cellSize, int columns, int rows,
+            XYPosition initialPosition
+    ) {
+        if(columns <= 0 || rows <= 0)
+            throw new IllegalArgumentException("The grid must have cells");
+        this.originX = originX;
+        this.originY = originY;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+
+        int cells = columns * rows;
+        mask = new float[cells];
+        for(int r = 0; r < rows; r++)
+            for(int c = 0; c < columns; c++)
+                if(map.isValid(originX + (c + .5f) * cellSize, originY + (r + .5f) * cellSize))
+                    mask[r * columns + c] = 1.f;
+        probabilities = new float[cells];
+        next = new float[cells];
+        rowPass = new float[cells];
+
+        // About a band per processor, but at least a few rows each
+        int processors = Runtime.getRuntime().availableProcessors();
+        bands = Math.max(1, Math.min(processors * 2, rows / 4));
+        bandSums = new double[bands];
+        bandMeansX = new double[bands];
+        bandMeansY = new double[bands];
+        for(int b = 0; b < bands; b++)
+            tasks.add(new BandTask(b));
+
+        reset(initialPosition);
+    }
+
+    /**
+     * Puts all the probability in the cell of a position.
+     * @param position
+     */
+    public void reset(XYPosition position) {
+        for(int i = 0; i < probabilities.length; i++)
+            probabilities[i] = 0.f;
+        probabilities[row(position.y) * columns + column(position.x)] = 1.f;
+        this.position = position;
+    }
+
+    /**
+     * Enables the parallel mode.
+     * @param executor The threads running the bands of rows, null for sequential mode.
+     * @param threshold Grids of fewer cells are processed sequentially.
+     */
+    public void setExecutor(ExecutorService executor, int threshold) {
+        this.executor = executor;
+        this.parallelThreshold = threshold;
+    }
+
+    /**
+     * Motion update.
+     * @param dx Movement along x, in meters.
+     * @param dy Movement along y, in meters.
+     * @param standardDeviation Uncertainty of the movement along each axis, in meters.
+     * @return false if no valid cell can be reached: the probabilities are then unchanged.
+     */
+    public boolean predict(float dx, float dy, float standardDeviation) {
+        float sd = Math.max(standardDeviation / cellSize, 1e-3f);
+        kernelX = kernel(dx / cellSize, sd, kernelX);
+        firstX = kernelFirst;
+        lengthX = kernelLength;
+        kernelY = kernel(dy / cellSize, sd, kernelY);
+        firstY = kernelFirst;
+        lengthY = kernelLength;
+
+        run(ROWS_PASS);
+        run(COLUMNS_PASS);
+        return normalize();
+    }
+
+    /**
+     * Measurement update.
+     * @param likelihood The likelihood of the measurement in every cell, row by row.
+     * @return false if the measurement leaves no probability: the probabilities are then
+     * unchanged.
+     */
+    public boolean correct(float[] likelihood) {
+        if(likelihood.length != probabilities.length)
+            throw new IllegalArgumentException("The likelihood must have a value per cell");
+        this.likelihood = likelihood;
+        run(CORRECTION_PASS);
+        this.likelihood = null;
+        return normalize();
+    }
+
+    /**
+     * Measurement update, with the likelihood evaluated in the bands of rows. Cells without
+     * probability are skipped.
+     * @param likelihood The likelihood of the measurement.
+     * @return false if the measurement leaves no probability: the probabilities are then
+     * unchanged.
+     */
+    public boolean correct(Likelihood likelihood) {
+        this.likelihoodFunction = likelihood;
+        run(CORRECTION_PASS);
+        this.likelihoodFunction = null;
+        return normalize();
+    }
+
+    /**
+     * Makes next, whose band sums are in bandSums, the new probabilities.
+     */
+    private boolean normalize() {
+        double sum = 0.;
+        for(int b = 0; b < bands; b++)
+            sum += bandSums[b];
+        if(!(sum > 0.) || Double.isInfinite(sum))
+            return false;
+        float[] swap = probabilities;
+        probabilities = next;
+        next = swap;
+        norm = (float) (1. / sum);
+        run(NORMALIZATION_PASS);
+
+        // Weighted mean of the cells
+        double meanX = 0., meanY = 0.;
+        for(int b = 0; b < bands; b++) {
+            meanX += bandMeansX[b];
+            meanY += bandMeansY[b];
+        }
+        position = new XYPosition(
+                originX + (float) meanX * cellSize,
+                originY + (float) meanY * cellSize);
+        return true;
+    }
+
+    private void run(int pass) {
+        this.pass = pass;
+        if(executor != null && bands > 1 && probabilities.length >= parallelThreshold)
+            runParallel();
+        else
+            for(int b = 0; b < bands; b++)
+                runBand(b);
+    }
+
+    private void runBand(int band) {
+        int from = rows * band / bands;
+        int to = rows * (band + 1) / bands;
+        switch(pass) {
+            case ROWS_PASS:
+                rowsPass(from, to);
+                break;
+            case COLUMNS_PASS:
+                bandSums[band] = columnsPass(from, to);
+                break;
+            case CORRECTION_PASS:
+                bandSums[band] = correctionPass(from, to);
+                break;
+            case NORMALIZATION_PASS:
+                normalizationPass(band, from, to);
+                break;
+        }
+    }
+
+    /**
+     * rowPass[r][c] = SUM(kernelX[k] * probabilities[r][c - firstX - k])
+     */
+    private void rowsPass(int from, int to) {
+        for(int r = from; r < to; r++) {
+            int base = r * columns;
+            for(int c = 0; c < columns; c++) {
+                float value = 0.f;
+                int source = c - firstX;
+                int k0 = Math.max(0, source - columns + 1);
+                int k1 = Math.min(lengthX, source + 1);
+                for(int k = k0; k < k1; k++)
+                    value += kernelX[k] * probabilities[base + source - k];
+                rowPass[base + c] = value;
+            }
+        }
+    }
+
+    /**
+     * next[r][c] = mask[r][c] * SUM(kernelY[k] * rowPass[r - firstY - k][c])
+     * @return The sum of the rows.
+     */
+    private double columnsPass(int from, int to) {
+        double sum = 0.;
+        for(int r = from; r < to; r++) {
+            int base = r * columns;
+            for(int c = 0; c < columns; c++)
+                next[base + c] = 0.f;
+            int source = r - firstY;
+            int k0 = Math.max(0, source - rows + 1);
+            int k1 = Math.min(lengthY, source + 1);
+            for(int k = k0; k < k1; k++) {
+                float weight = kernelY[k];
+                int sourceBase = (source - k) * columns;
+                for(int c = 0; c < columns; c++)
+                    next[base + c] += weight * rowPass[sourceBase + c];
+            }
+            float rowSum = 0.f;
+            for(int c = 0; c < columns; c++) {
+                float value = next[base + c] * mask[base + c];
+                next[base + c] = value;
+                rowSum += value;
+            }
+            sum += rowSum;
+        }
+        return sum;
+    }
+
+    /**
+     * next = probabilities * likelihood
+     * @return The sum of the rows.
+     */
+    private double correctionPass(int from, int to) {
+        Likelihood function = likelihoodFunction;
+        double sum = 0.;
+        for(int r = from; r < to; r++) {
+            int base = r * columns;
+            float y = originY + (r + .5f) * cellSize;
+            float rowSum = 0.f;
+            for(int c = 0; c < columns; c++) {
+                float value = probabilities[base + c];
+                if(function == null)
+                    value *= likelihood[base + c];
+                else if(value != 0.f)
+                    value *= function.getLikelihood(originX + (c + .5f) * cellSize, y);
+                next[base + c] = value;
+                rowSum += value;
+            }
+            sum += rowSum;
+        }
+        return sum;
+    }
+
+    private void normalizationPass(int band, int from, int to) {
+        double meanX = 0., meanY = 0.;
+        for(int r = from; r < to; r++) {
+            int base = r * columns;
+            float rowSum = 0.f, rowX = 0.f;
+            for(int c = 0; c < columns; c++) {
+                float value = probabilities[base + c] * norm;
+                probabilities[base + c] = value;
+                rowSum += value;
+                rowX += value * (c + .5f);
+            }
+            meanX += rowX;
+            meanY += rowSum * (r + .5);
+        }
+        bandMeansX[band] = meanX;
+        bandMeansY[band] = meanY;
+    }
+
+    /**
+     * Samples a Gaussian of mean shift and standard deviation sd (in cells) at the integer
+     * offsets, integrating it over each cell, and normalizes it.
+     */
+    private float[] kernel(float shift, float sd, float[] buffer) {
+        int first = (int) Math.floor(shift - KERNEL_RADIUS * sd);
+        int last = (int) Math.ceil(shift + KERNEL_RADIUS * sd);
+        int length = last - first + 1;
+        if(buffer.length < length)
+            buffer = new float[length];
+        double sum = 0.;
+        for(int k = 0; k < length; k++) {
+            double offset = first + k - shift;
+            double weight = cdf((offset + .5) / sd) - cdf((offset - .5) / sd);
+            buffer[k] = (float) weight;
+            sum += weight;
+        }
+        for(int k = 0; k < length; k++)
+            buffer[k] /= sum;
+        kernelFirst = first;
+        kernelLength = length;
+        return buffer;
+    }
+
+    /**
+     * Standard normal cumulative distribution function (Zelen and Severo's approximation,
+     * error below 1e-7).
+     */
+    private static double cdf(double z) {
+        double t = 1. / (1. + .2316419 * Math.abs(z));
+        double d = .3989422804014327 * Math.exp(-z * z / 2.);
+        double p = d * t * (.319381530 + t * (-.356563782 + t * (1.781477937 + t * (-1.821255978 + t * 1.330274429))));
+        return (z > 0. ? 1. - p : p);
+    }
+
+    /**
+     * Runs the bands on the executor and waits for all of them. Bands write disjoint rows.
+     */
+    private void runParallel() {
+        try {
+            List<Future<Void>> results = executor.invokeAll(tasks);
+            for(Future<Void> result : results)
+                result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while filtering", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if(cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private class BandTask implements Callable<Void> {
+
+        private final int band;
+
+        BandTask(int band) {
+            this.band = band;
+        }
+
+        @Override
+        public Void call() {
+            runBand(band);
+            return null;
+        }
+    }
+
+    /**
+     * @return The mean of the probability, or the initial position before any update.
+     */
+    @Override
+    public XYPosition get2DPosition() {
+        return position;
+    }
+
+    /**
+     * @return The probability of a cell.
+     */
+    public float getProbability(int column, int row) {
+        return probabilities[row * columns + column];
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginY() {
+        return originY;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    private int column(float x) {
+        int c = (int) Math.floor((x - originX) / cellSize);
+        return (c < 0 ? 0 : (c >= columns ? columns - 1 : c));
+    }
+
+    private int row(float y) {
+        int r = (int) Math.floor((y - originY) / cellSize);
+        return (r < 0 ? 0 : (r >= rows ? rows - 1 : r));
+    }
+}
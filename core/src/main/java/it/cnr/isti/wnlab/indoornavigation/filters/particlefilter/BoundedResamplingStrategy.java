@@ -0,0 +1,12 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+/**
+ * A regeneration policy whose number of particles can be capped, i.e. to fit a time budget.
+ */
+public interface BoundedResamplingStrategy extends ResamplingStrategy {
+
+    /**
+     * @param maxParticles The maximum number of particles of the next generations.
+     */
+    void setMaxParticles(int maxParticles);
+}
@@ -0,0 +1,20 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * Particle filtering step of a Particle Filter.
+ */
+public interface FilteringStrategy {
+
+    /**
+     * Filter particles, killing the invalid ones.
+     * In parallel mode disjoint ranges are handled at the same time by different threads: only
+     * the particles in the range may be written.
+     * @param particles
+     * @param from First index (inclusive) of the particles to filter.
+     * @param to Last index (exclusive) of the particles to filter.
+     * @param random The randomness to use for this range.
+     */
+    void filter(ParticleSet particles, int from, int to, RandomStream random);
+}
@@ -1,7 +1,5 @@
 package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
 
-import java.util.Collection;
-
 import it.cnr.isti.wnlab.indoornavigation.XYPosition;
 import it.cnr.isti.wnlab.indoornavigation.filters.PositionFilter2D;
 
@@ -9,19 +7,23 @@ import it.cnr.isti.wnlab.indoornavigation.filters.PositionFilter2D;
  * This is a concrete class for Particle Filters for Indoor 2D Localization.
  * Actually this is just an empty (enriched) shell: the policies for updating, filtering,
  * regenerating and picking the position as a result must be injected.
+ * The position is picked only when asked for, at most once per step. Without a picking
+ * strategy, it is the weighted mean of the particles, from the filter's moments.
  */
-public class IndoorParticleFilter extends ParticleFilter<PositionParticle> implements PositionFilter2D {
+public class IndoorParticleFilter extends ParticleFilter implements PositionFilter2D {
 
-    protected PositionPickingStrategy mPositionPicking;
+    protected PositionPickingStrategy<XYPosition> mPositionPicking;
     protected XYPosition position;
+    private boolean positionPicked = true;
 
     public IndoorParticleFilter(
             XYPosition initialPosition,
-            Collection particles,
+            ParticleSet particles,
             UpdateStrategy updateStep,
             FilteringStrategy filteringStep,
             ResamplingStrategy regenerationStep,
-            PositionPickingStrategy<PositionParticle,XYPosition> positionPicking
+            // null for the weighted mean
+            PositionPickingStrategy<XYPosition> positionPicking
     ) {
         super(particles, updateStep, filteringStep, regenerationStep);
         this.mPositionPicking = positionPicking;
@@ -31,11 +33,21 @@ public class IndoorParticleFilter extends ParticleFilter<PositionParticle> imple
     @Override
     public void filter() {
         super.filter();
-        position = mPositionPicking.getPosition(particles);
+        positionPicked = false;
     }
 
+    /**
+     * @return The position picked from the particles, or the last one if there are none.
+     */
     @Override
     public XYPosition get2DPosition() {
+        if(!positionPicked) {
+            XYPosition picked = (mPositionPicking != null ?
+                    mPositionPicking.getPosition(particles) : getMoments().getMean());
+            if(picked != null)
+                position = picked;
+            positionPicked = true;
+        }
         return position;
     }
 }
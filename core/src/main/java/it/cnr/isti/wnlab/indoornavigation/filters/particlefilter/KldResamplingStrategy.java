@@ -0,0 +1,186 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import java.util.Arrays;
+
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * KLD-sampling (Fox, 2003): the number of particles adapts to how spread they are.
+ * <p>
+ * Particles are drawn one by one by weight, and their positions are binned into a grid of
+ * square cells. Drawing stops when the particles are enough for the Kullback-Leibler distance
+ * between the drawn and the true distribution to be less than epsilon with probability 1-delta,
+ * given the number k of occupied bins:
+ * <pre>
+ * n = (k-1)/(2*epsilon) * (1 - 2/(9(k-1)) + sqrt(2/(9(k-1))) * z)^3
+ * </pre>
+ * where z is the upper 1-delta quantile of N(0,1). A collapsed cloud needs few particles, a
+ * spread one many, within [minParticles, maxParticles]. Each draw is a binary search over the
+ * cumulative weights; buffers are reused between calls.
+ */
+public class KldResamplingStrategy implements BoundedResamplingStrategy, MomentsResamplingStrategy {
+
+    // Upper quantile of N(0,1) for delta = 0.01
+    public static final float DEFAULT_UPPER_QUANTILE = 2.326f;
+
+    private final float binSize;
+    private final float epsilon;
+    private final float upperQuantile;
+    private final int minParticles;
+    private final int maxParticles;
+    // Cap set from outside, i.e. by a time budget
+    private int particlesCap;
+
+    // The previous generation
+    private float[] sourceX = new float[0];
+    private float[] sourceY = new float[0];
+    private double[] cumulative = new double[0];
+
+    // Occupied bins: open addressing set of packed cell coordinates
+    private static final long EMPTY_BIN = Long.MIN_VALUE;
+    private final long[] bins;
+
+    private WeightedMoments moments;
+
+    /**
+     * @param binSize Side of the bins, in meters.
+     * @param epsilon Bound of the Kullback-Leibler distance.
+     * @param upperQuantile Upper 1-delta quantile of N(0,1), see DEFAULT_UPPER_QUANTILE.
+     * @param minParticles
+     * @param maxParticles
+     */
+    public KldResamplingStrategy(
+            float binSize, float epsilon, float upperQuantile, int minParticles, int maxParticles) {
+        if(binSize <= 0.f || epsilon <= 0.f)
+            throw new IllegalArgumentException("binSize and epsilon must be positive");
+        if(minParticles <= 0 || maxParticles < minParticles)
+            throw new IllegalArgumentException("Invalid particles bounds");
+        this.binSize = binSize;
+        this.epsilon = epsilon;
+        this.upperQuantile = upperQuantile;
+        this.minParticles = minParticles;
+        this.maxParticles = maxParticles;
+        this.particlesCap = maxParticles;
+        // There are at most maxParticles bins: keep the load under 1/2
+        this.bins = new long[Integer.highestOneBit(maxParticles) << 2];
+    }
+
+    /**
+     * @param maxParticles Caps the maximum number of particles given to the constructor. The
+     *                     minimum number prevails.
+     */
+    @Override
+    public void setMaxParticles(int maxParticles) {
+        this.particlesCap = Math.max(minParticles, Math.min(this.maxParticles, maxParticles));
+    }
+
+    /**
+     * @param moments Filled with the new generation, or null.
+     */
+    @Override
+    public void setMoments(WeightedMoments moments) {
+        this.moments = moments;
+    }
+
+    @Override
+    public void regenerate(ParticleSet particles, RandomStream random) {
+        int n = particles.size();
+        if(n == 0)
+            return;
+
+        // Keep the previous generation, with its cumulative weights
+        if(sourceX.length < n) {
+            int capacity = Math.max(n, sourceX.length * 2);
+            sourceX = new float[capacity];
+            sourceY = new float[capacity];
+            cumulative = new double[capacity];
+        }
+        double sum = 0.;
+        for(int i = 0; i < n; i++) {
+            sourceX[i] = particles.getX(i);
+            sourceY[i] = particles.getY(i);
+            sum += particles.getWeight(i);
+            cumulative[i] = sum;
+        }
+        if(!(sum > 0.) || Double.isInfinite(sum)) {
+            // Degenerate weights: draw uniformly
+            for(int i = 0; i < n; i++)
+                cumulative[i] = i + 1;
+            sum = n;
+        }
+
+        // Draw until the bound is met
+        particles.clear();
+        Arrays.fill(bins, EMPTY_BIN);
+        int occupiedBins = 0;
+        int required = minParticles;
+        while(particles.size() < required) {
+            int source = search(cumulative, n, random.nextDouble() * sum);
+            float x = sourceX[source];
+            float y = sourceY[source];
+            particles.add(x, y, 0.f);
+            if(addBin((int) Math.floor(x / binSize), (int) Math.floor(y / binSize))) {
+                occupiedBins++;
+                required = Math.min(particlesCap, Math.max(minParticles, getBound(occupiedBins)));
+            }
+        }
+
+        float weight = 1.f / particles.size();
+        for(int i = 0; i < particles.size(); i++) {
+            particles.setWeight(i, weight);
+            if(moments != null)
+                moments.add(particles.getX(i), particles.getY(i), weight);
+        }
+    }
+
+    /**
+     * @param k Occupied bins.
+     * @return The number of particles required with k occupied bins.
+     */
+    private int getBound(int k) {
+        if(k < 2)
+            return 1;
+        double a = 2. / (9. * (k - 1));
+        double b = 1. - a + Math.sqrt(a) * upperQuantile;
+        double bound = (k - 1) / (2. * epsilon) * b * b * b;
+        return (bound >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.ceil(bound));
+    }
+
+    /**
+     * @return true if the bin wasn't occupied yet.
+     */
+    private boolean addBin(int column, int row) {
+        long key = ((long) column << 32) | (row & 0xFFFFFFFFL);
+        if(key == EMPTY_BIN)
+            key = 0x7FFFFFFF00000000L;
+        int mask = bins.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash >>> 32) & mask;
+        while(true) {
+            long current = bins[slot];
+            if(current == key)
+                return false;
+            if(current == EMPTY_BIN) {
+                bins[slot] = key;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return The first index whose cumulative weight is greater than u.
+     */
+    private static int search(double[] cumulative, int n, double u) {
+        int low = 0;
+        int high = n - 1;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(cumulative[middle] > u)
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,66 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * Filtering by weight: particles are weighted by the likelihood of the measurements in their
+ * position instead of being killed at random, so that no information is thrown away.
+ * <p>
+ * Between filter() and normalize() weights are in log space: filter() adds the log-likelihood
+ * to the log of every weight (ranges can be filtered concurrently), normalize() is called once
+ * per epoch, after all the ranges, and takes them back to weights summing to 1. The maximum is
+ * subtracted before exponentiation, so that tiny likelihoods don't underflow.
+ */
+public abstract class LikelihoodFilteringStrategy implements FilteringStrategy {
+
+    @Override
+    public void filter(ParticleSet particles, int from, int to, RandomStream random) {
+        for(int i = from; i < to; i++) {
+            if(!particles.isAlive(i))
+                continue;
+            float logLikelihood = getLogLikelihood(particles.getX(i), particles.getY(i));
+            if(logLikelihood == Float.NEGATIVE_INFINITY)
+                particles.kill(i);
+            else
+                particles.setWeight(i, (float) Math.log(particles.getWeight(i)) + logLikelihood);
+        }
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return The log-likelihood of the measurements in (x,y), up to a constant.
+     * NEGATIVE_INFINITY kills the particle.
+     */
+    protected abstract float getLogLikelihood(float x, float y);
+
+    /**
+     * Turns log-weights into weights summing to 1. If no particle has a finite log-weight,
+     * they all get the same weight.
+     * @param particles The particles, without dead ones.
+     */
+    public static void normalize(ParticleSet particles) {
+        int n = particles.size();
+        if(n == 0)
+            return;
+
+        float max = Float.NEGATIVE_INFINITY;
+        for(int i = 0; i < n; i++)
+            max = Math.max(max, particles.getWeight(i));
+        if(max == Float.NEGATIVE_INFINITY || Float.isNaN(max)) {
+            for(int i = 0; i < n; i++)
+                particles.setWeight(i, 1.f / n);
+            return;
+        }
+
+        double sum = 0.;
+        for(int i = 0; i < n; i++) {
+            float w = (float) Math.exp(particles.getWeight(i) - max);
+            particles.setWeight(i, w);
+            sum += w;
+        }
+        float norm = (float) (1. / sum);
+        for(int i = 0; i < n; i++)
+            particles.setWeight(i, particles.getWeight(i) * norm);
+    }
+}
@@ -0,0 +1,14 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+/**
+ * A regeneration policy that fills the moments of the new generation while it sets its
+ * weights, sparing the filter a pass over the particles to estimate the position.
+ */
+public interface MomentsResamplingStrategy extends ResamplingStrategy {
+
+    /**
+     * @param moments Cleared by the filter before every regeneration, then filled with every
+     *                particle of the new generation and its final weight. null for none.
+     */
+    void setMoments(WeightedMoments moments);
+}
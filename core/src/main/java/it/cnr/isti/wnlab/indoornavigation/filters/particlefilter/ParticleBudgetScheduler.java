@@ -0,0 +1,117 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+/**
+ * Runs the steps of a Particle Filter and adapts the particles budget to a target latency.
+ * <p>
+ * The cost of a particle is measured at every step and smoothed with an exponentially weighted
+ * moving average. The budget is changed to targetLatency/cost only when the expected latency
+ * with the current budget leaves the band targetLatency*(1 +- hysteresis), so that noise in
+ * the measures doesn't make it oscillate. It never goes below the floor nor above the ceiling.
+ * The budget is only a figure: it's up to the caller to apply it, i.e. with a
+ * BoundedResamplingStrategy.
+ */
+public class ParticleBudgetScheduler {
+
+    public static final float DEFAULT_SMOOTHING = .2f;
+    public static final float DEFAULT_HYSTERESIS = .15f;
+
+    private final long targetLatency;
+    private final int floor;
+    private final int ceiling;
+    private final float smoothing;
+    private final float hysteresis;
+
+    // Smoothed nanoseconds per particle, negative before the first step
+    private double particleCost = -1.;
+    private int budget;
+    private long lastLatency;
+
+    private ParticleFilterMetrics metrics;
+
+    /**
+     * @param targetLatency Target duration of a step, in nanoseconds.
+     * @param floor Minimum budget.
+     * @param ceiling Maximum budget, and the first one.
+     */
+    public ParticleBudgetScheduler(long targetLatency, int floor, int ceiling) {
+        this(targetLatency, floor, ceiling, DEFAULT_SMOOTHING, DEFAULT_HYSTERESIS);
+    }
+
+    /**
+     * @param targetLatency Target duration of a step, in nanoseconds.
+     * @param floor Minimum budget.
+     * @param ceiling Maximum budget, and the first one.
+     * @param smoothing Weight of the last measure in the average, in (0,1].
+     * @param hysteresis Relative tolerance around the target latency.
+     */
+    public ParticleBudgetScheduler(long targetLatency, int floor, int ceiling, float smoothing, float hysteresis) {
+        if(targetLatency <= 0 || floor <= 0 || ceiling < floor)
+            throw new IllegalArgumentException("Invalid latency or budget bounds");
+        if(smoothing <= 0.f || smoothing > 1.f || hysteresis < 0.f)
+            throw new IllegalArgumentException("Invalid smoothing or hysteresis");
+        this.targetLatency = targetLatency;
+        this.floor = floor;
+        this.ceiling = ceiling;
+        this.smoothing = smoothing;
+        this.hysteresis = hysteresis;
+        this.budget = ceiling;
+    }
+
+    /**
+     * @param metrics Receives budget and latency after every step, or null.
+     */
+    public void setMetrics(ParticleFilterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs a step of the filter and updates the budget.
+     * @param filter
+     */
+    public void filter(ParticleFilter filter) {
+        int particles = filter.getParticles().size();
+        long start = System.nanoTime();
+        filter.filter();
+        long latency = System.nanoTime() - start;
+        update(latency, particles);
+        if(metrics != null)
+            metrics.onBudget(budget, latency);
+    }
+
+    /**
+     * Updates the budget with the measure of a step.
+     * @param latency Duration of the step, in nanoseconds.
+     * @param particles The number of particles at the beginning of the step.
+     */
+    public void update(long latency, int particles) {
+        lastLatency = latency;
+        if(particles <= 0)
+            return;
+
+        double cost = (double) latency / particles;
+        if(particleCost < 0.)
+            particleCost = cost;
+        else
+            particleCost += smoothing * (cost - particleCost);
+
+        double expected = particleCost * budget;
+        if(expected > targetLatency * (1. + hysteresis) || expected < targetLatency * (1. - hysteresis)) {
+            double fit = targetLatency / Math.max(particleCost, 1e-3);
+            budget = (int) Math.max(floor, Math.min(ceiling, fit));
+        }
+    }
+
+    /**
+     * @return The number of particles of the next step.
+     */
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return The duration of the last step, in nanoseconds.
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+}
@@ -0,0 +1,241 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import it.cnr.isti.wnlab.indoornavigation.filters.StateEstimationFilter;
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * This is a concrete class for Particle Filters.
+ * Actually this is just an empty (enriched) shell: the policies for updating, filtering,
+ * regenerating and picking the position as a result must be injected.
+ * Note that strategies and the particles set might be mutable.
+ * <p>
+ * Particles are updated and filtered in chunks, each with its own random stream derived from
+ * the filter's seed and the chunk's index. With an executor, chunks of a large enough set run
+ * in parallel. The result only depends on the seed and the chunk size: it is the same
+ * sequentially and in parallel, with any number of threads.
+ * <p>
+ * The weighted moments of the particles are filled by the resampling strategy if it is a
+ * MomentsResamplingStrategy, otherwise with a pass over the particles when first asked for.
+ */
+public class ParticleFilter implements StateEstimationFilter {
+
+    // Chunks are aligned to the words of the dead particles bitmap, so no two threads share one
+    public static final int CHUNK_ALIGNMENT = 64;
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    protected ParticleSet particles;
+    protected final int beginningParticlesNumber;
+
+    protected UpdateStrategy updateStrategy;
+    protected FilteringStrategy filteringStrategy;
+    protected ResamplingStrategy resamplingStrategy;
+
+    // Randomness: the master stream gives a seed per epoch, chunk streams are derived from it
+    private final RandomStream random = RandomStream.fromTime();
+    private RandomStream[] chunkRandoms = new RandomStream[0];
+    private long epochSeed;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    // Parallel mode
+    private ExecutorService executor;
+    private int parallelThreshold;
+    private final List<ChunkTask> tasks = new ArrayList<>();
+
+    private ParticleFilterMetrics metrics;
+
+    // Moments of the particles after the last regeneration
+    private final WeightedMoments moments = new WeightedMoments();
+
+    public ParticleFilter(
+            ParticleSet particles,
+            UpdateStrategy updateStrategy,
+            FilteringStrategy filteringStrategy,
+            ResamplingStrategy resamplingStrategy) {
+        // Set particles
+        this.particles = particles;
+        this.beginningParticlesNumber = particles.size();
+
+        // Set strategies
+        this.updateStrategy = updateStrategy;
+        this.filteringStrategy = filteringStrategy;
+        this.resamplingStrategy = resamplingStrategy;
+        if(resamplingStrategy instanceof MomentsResamplingStrategy)
+            ((MomentsResamplingStrategy) resamplingStrategy).setMoments(moments);
+    }
+
+    /**
+     * Makes the filter reproducible: the same seed with the same inputs and chunk size gives
+     * the same particles.
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        random.reseed(seed);
+    }
+
+    /**
+     * @param chunkSize Particles per chunk, rounded up to a multiple of CHUNK_ALIGNMENT.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, (chunkSize + CHUNK_ALIGNMENT - 1) / CHUNK_ALIGNMENT) * CHUNK_ALIGNMENT;
+    }
+
+    /**
+     * Enables the parallel mode: strategies must then be safe for concurrent calls on disjoint
+     * ranges (see UpdateStrategy).
+     * @param executor The threads running the chunks, null for sequential mode.
+     * @param threshold Sets of fewer particles are filtered sequentially.
+     */
+    public void setExecutor(ExecutorService executor, int threshold) {
+        this.executor = executor;
+        this.parallelThreshold = threshold;
+    }
+
+    /**
+     * @param metrics Receives the figures of every step, or null.
+     */
+    public void setMetrics(ParticleFilterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void filter() {
+        int n = particles.size();
+        int chunks = (n + chunkSize - 1) / chunkSize;
+        prepareChunks(chunks);
+
+        if(executor != null && chunks > 1 && n >= parallelThreshold)
+            filterParallel(chunks);
+        else
+            for(int c = 0; c < chunks; c++)
+                filterChunk(c);
+
+        // Remove killed particles before regeneration
+        particles.compact();
+        moments.clear();
+        if(resamplingStrategy != null)
+            resamplingStrategy.regenerate(particles, random);
+
+        if(metrics != null)
+            metrics.onParticlesNumber(particles.size());
+    }
+
+    /**
+     * Draws the seed of this epoch and makes sure there are enough chunk streams.
+     */
+    private void prepareChunks(int chunks) {
+        epochSeed = random.nextLong();
+        if(chunkRandoms.length < chunks) {
+            RandomStream[] streams = new RandomStream[chunks];
+            System.arraycopy(chunkRandoms, 0, streams, 0, chunkRandoms.length);
+            for(int c = chunkRandoms.length; c < chunks; c++)
+                streams[c] = new RandomStream(0);
+            chunkRandoms = streams;
+        }
+        for(int c = tasks.size(); c < chunks; c++)
+            tasks.add(new ChunkTask(c));
+    }
+
+    /**
+     * Updates and filters a chunk with its own stream.
+     */
+    private void filterChunk(int chunk) {
+        int from = chunk * chunkSize;
+        int to = Math.min(particles.size(), from + chunkSize);
+        RandomStream chunkRandom = chunkRandoms[chunk];
+        chunkRandom.reseed(epochSeed, chunk);
+        if(updateStrategy != null)
+            updateStrategy.update(particles, from, to, chunkRandom);
+        if(filteringStrategy != null)
+            filteringStrategy.filter(particles, from, to, chunkRandom);
+    }
+
+    /**
+     * Runs the chunks on the executor and waits for all of them. Chunks write disjoint
+     * particles (and bitmap words), so no lock is needed: completion publishes their writes.
+     */
+    private void filterParallel(int chunks) {
+        try {
+            List<Future<Void>> results = executor.invokeAll(tasks.subList(0, chunks));
+            for(Future<Void> result : results)
+                result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while filtering", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if(cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private class ChunkTask implements Callable<Void> {
+
+        private final int chunk;
+
+        ChunkTask(int chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public Void call() {
+            filterChunk(chunk);
+            return null;
+        }
+    }
+
+    /**
+     * @return The weighted moments of the particles, i.e. to get their mean and covariance. They
+     * are modified by every filter() call.
+     */
+    public WeightedMoments getMoments() {
+        // Not filled by the resampling strategy
+        if(moments.getCount() != particles.size())
+            moments.accumulate(particles);
+        return moments;
+    }
+
+    /**
+     * @return The particles. They are modified by every filter() call.
+     */
+    public ParticleSet getParticles() {
+        return particles;
+    }
+
+    /*
+
+    THIS CODE SHOULDN'T BE HERE!
+
+    public UpdateStrategy getUpdateStrategy() {
+        return updateStrategy;
+    }
+
+    public void setUpdateStrategy(UpdateStrategy updateStrategy) {
+        this.updateStrategy = updateStrategy;
+    }
+
+    public FilteringStrategy getFilteringStrategy() {
+        return filteringStrategy;
+    }
+
+    public void setFilteringStrategy(FilteringStrategy filteringStrategy) {
+        this.filteringStrategy = filteringStrategy;
+    }
+
+    public ResamplingStrategy getRegenerationStrategy() {
+        return resamplingStrategy;
+    }
+
+    public void setRegenerationStrategy(ResamplingStrategy resamplingStrategy) {
+        this.resamplingStrategy = resamplingStrategy;
+    }*/
+
+}
@@ -0,0 +1,19 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+/**
+ * Receives figures about every step of a Particle Filter, i.e. to log or display them.
+ * Callbacks are made on the filtering thread.
+ */
+public interface ParticleFilterMetrics {
+
+    /**
+     * @param particles The number of particles after regeneration.
+     */
+    void onParticlesNumber(int particles);
+
+    /**
+     * @param budget The particles budget of the next step (see ParticleBudgetScheduler).
+     * @param latency Duration of the last step, in nanoseconds.
+     */
+    void onBudget(int budget, long latency);
+}
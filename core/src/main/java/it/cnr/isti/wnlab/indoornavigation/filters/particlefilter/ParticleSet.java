@@ -0,0 +1,186 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+
+/**
+ * Particles that represent 2D positions, stored as parallel arrays of x, y and weight.
+ * <p>
+ * Particles are addressed by index in [0, size()). A killed particle keeps its slot (it is
+ * flagged in a bitmap) until compact() moves the alive ones to the front, in their order.
+ * Nothing is allocated as long as the particles fit the capacity.
+ * <p>
+ * Particles in different 64-aligned ranges can be updated and killed by different threads at
+ * the same time: they share no word of the bitmap.
+ */
+public class ParticleSet {
+
+    private float[] x, y, weight;
+
+    // Bit i is set if particle i has been killed
+    private long[] dead;
+
+    private int size;
+
+    /**
+     * @param capacity The number of particles that can be stored without growing.
+     */
+    public ParticleSet(int capacity) {
+        capacity = Math.max(capacity, 1);
+        x = new float[capacity];
+        y = new float[capacity];
+        weight = new float[capacity];
+        dead = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * @param initialPosition
+     * @param particlesNumber
+     * @return A set of particlesNumber equally-weighted particles on initialPosition.
+     */
+    public static ParticleSet create(XYPosition initialPosition, int particlesNumber) {
+        ParticleSet particles = new ParticleSet(particlesNumber);
+        for(int i = 0; i < particlesNumber; i++)
+            particles.add(initialPosition.x, initialPosition.y, 1.f/particlesNumber);
+        return particles;
+    }
+
+    /**
+     * @param n The number of particles.
+     * @param minX Minimum x coordinate.
+     * @param minY Minimum y coordinate.
+     * @param maxX Maximum x coordinate.
+     * @param maxY Maximum y coordinate.
+     * @return A set of n equally-weighted particles with gaussian-distributed coordinates.
+     */
+    public static ParticleSet createGaussian(int n, float minX, float minY, float maxX, float maxY) {
+        Random rx = new Random();
+        Random ry = new Random();
+        ParticleSet particles = new ParticleSet(n);
+        for(int i = 0; i < n; i++) {
+            float x = ((float) rx.nextGaussian())*(maxX-minX)+minX;
+            float y = ((float) ry.nextGaussian())*(maxY-minY)+minY;
+            particles.add(x, y, 1.f/n);
+        }
+        return particles;
+    }
+
+    /**
+     * @return The number of slots in use, killed particles included.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of alive particles.
+     */
+    public int aliveCount() {
+        int deadCount = 0;
+        int words = (size + 63) >>> 6;
+        for(int w = 0; w < words; w++)
+            deadCount += Long.bitCount(dead[w]);
+        return size - deadCount;
+    }
+
+    public boolean isEmpty() {
+        return aliveCount() == 0;
+    }
+
+    public float getX(int i) {
+        return x[i];
+    }
+
+    public float getY(int i) {
+        return y[i];
+    }
+
+    public float getWeight(int i) {
+        return weight[i];
+    }
+
+    public void setPosition(int i, float x, float y) {
+        this.x[i] = x;
+        this.y[i] = y;
+    }
+
+    public void setWeight(int i, float weight) {
+        this.weight[i] = weight;
+    }
+
+    public boolean isAlive(int i) {
+        return (dead[i >>> 6] & (1L << i)) == 0;
+    }
+
+    /**
+     * Flags a particle as dead. It is removed by the next compact().
+     * @param i
+     */
+    public void kill(int i) {
+        dead[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * Appends an alive particle.
+     * @return The index of the new particle.
+     */
+    public int add(float x, float y, float weight) {
+        if(size == this.x.length)
+            ensureCapacity(size * 2);
+        this.x[size] = x;
+        this.y[size] = y;
+        this.weight[size] = weight;
+        return size++;
+    }
+
+    /**
+     * Removes the dead particles, keeping the alive ones in their order.
+     */
+    public void compact() {
+        int alive = 0;
+        for(int i = 0; i < size; i++) {
+            if(isAlive(i)) {
+                x[alive] = x[i];
+                y[alive] = y[i];
+                weight[alive] = weight[i];
+                alive++;
+            }
+        }
+        Arrays.fill(dead, 0, (size + 63) >>> 6, 0L);
+        size = alive;
+    }
+
+    /**
+     * Removes every particle.
+     */
+    public void clear() {
+        Arrays.fill(dead, 0, (size + 63) >>> 6, 0L);
+        size = 0;
+    }
+
+    /**
+     * @param capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if(capacity <= x.length)
+            return;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        weight = Arrays.copyOf(weight, capacity);
+        dead = Arrays.copyOf(dead, (capacity + 63) >>> 6);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ParticleSet(");
+        for(int i = 0; i < size; i++) {
+            if(i > 0)
+                builder.append(",");
+            builder.append(isAlive(i) ? "" : "dead ")
+                    .append("(").append(x[i]).append(",").append(y[i]).append(",").append(weight[i]).append(")");
+        }
+        return builder.append(")").toString();
+    }
+}
@@ -0,0 +1,11 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+
+/**
+ * This strategy picks up a position given a set of particles.
+ * @param <P> the type of position, output of this strategy.
+ */
+public interface PositionPickingStrategy<P extends XYPosition> {
+    P getPosition(ParticleSet particles);
+}
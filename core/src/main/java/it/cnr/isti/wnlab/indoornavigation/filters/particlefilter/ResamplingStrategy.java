@@ -0,0 +1,15 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * The regeneration policy of a Particle Filter.
+ */
+public interface ResamplingStrategy {
+    /**
+     * Make a new generation of particles from the survived ones (i.e. for second generation on).
+     * @param particles The particles, without dead ones.
+     * @param random The filter's randomness.
+     */
+    void regenerate(ParticleSet particles, RandomStream random);
+}
@@ -0,0 +1,60 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * Residual resampling: every particle first gets floor(m*w) copies, then the copies left are
+ * drawn systematically over the residual weights m*w - floor(m*w).
+ */
+public class ResidualResamplingStrategy extends WeightedResamplingStrategy {
+
+    public ResidualResamplingStrategy(int targetNumber, float essThreshold) {
+        super(targetNumber, essThreshold);
+    }
+
+    @Override
+    protected void computeCounts(
+            ParticleSet particles, int n, double weightsSum, int m, int[] counts, RandomStream random) {
+        double scale = m / weightsSum;
+
+        // Deterministic copies, and the particle with the largest residual (or weight, if no
+        // residual is positive)
+        int drawn = 0;
+        double residualsSum = 0.;
+        int largest = 0;
+        double largestResidual = 0.;
+        for(int i = 0; i < n; i++) {
+            double expected = particles.getWeight(i) * scale;
+            int c = Math.min((int) expected, m - drawn);
+            counts[i] = c;
+            drawn += c;
+            double residual = expected - c;
+            residualsSum += residual;
+            if(residual > largestResidual
+                    || (largestResidual == 0. && particles.getWeight(i) > particles.getWeight(largest))) {
+                largest = i;
+                largestResidual = residual;
+            }
+        }
+
+        // Systematic draws over the residuals
+        int left = m - drawn;
+        if(left > 0 && residualsSum > 0.) {
+            double step = residualsSum / left;
+            double offset = random.nextDouble();
+            double cumulative = 0.;
+            int residualDrawn = 0;
+            for(int i = 0; i < n && residualDrawn < left; i++) {
+                // Same residual as in the sum: counts[i] holds the deterministic copies only
+                cumulative += particles.getWeight(i) * scale - counts[i];
+                while(residualDrawn < left && (residualDrawn + offset) * step < cumulative) {
+                    counts[i]++;
+                    residualDrawn++;
+                }
+            }
+            drawn += residualDrawn;
+        }
+        // Rounding errors: the copies left go to the most likely particle
+        counts[largest] += m - drawn;
+    }
+}
@@ -0,0 +1,35 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * Stratified resampling: the cumulative weights are split in m equal strata and a point is
+ * drawn uniformly in each of them.
+ */
+public class StratifiedResamplingStrategy extends WeightedResamplingStrategy {
+
+    public StratifiedResamplingStrategy(int targetNumber, float essThreshold) {
+        super(targetNumber, essThreshold);
+    }
+
+    @Override
+    protected void computeCounts(
+            ParticleSet particles, int n, double weightsSum, int m, int[] counts, RandomStream random) {
+        double step = weightsSum / m;
+        double point = random.nextDouble() * step;
+        double cumulative = 0.;
+        int drawn = 0;
+        for(int i = 0; i < n; i++) {
+            cumulative += particles.getWeight(i);
+            int c = 0;
+            while(drawn < m && point < cumulative) {
+                c++;
+                drawn++;
+                point = (drawn + random.nextDouble()) * step;
+            }
+            counts[i] = c;
+        }
+        // Rounding errors: the last particle takes the points left
+        counts[n - 1] += m - drawn;
+    }
+}
@@ -0,0 +1,34 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * Systematic (low variance) resampling: m equally spaced points with a single random offset
+ * are laid over the cumulative weights, so every particle gets floor(m*w) or ceil(m*w) copies.
+ */
+public class SystematicResamplingStrategy extends WeightedResamplingStrategy {
+
+    public SystematicResamplingStrategy(int targetNumber, float essThreshold) {
+        super(targetNumber, essThreshold);
+    }
+
+    @Override
+    protected void computeCounts(
+            ParticleSet particles, int n, double weightsSum, int m, int[] counts, RandomStream random) {
+        double step = weightsSum / m;
+        double offset = random.nextDouble();
+        double cumulative = 0.;
+        int drawn = 0;
+        for(int i = 0; i < n; i++) {
+            cumulative += particles.getWeight(i);
+            int c = 0;
+            while(drawn < m && (drawn + offset) * step < cumulative) {
+                c++;
+                drawn++;
+            }
+            counts[i] = c;
+        }
+        // Rounding errors: the last particle takes the points left
+        counts[n - 1] += m - drawn;
+    }
+}
@@ -0,0 +1,20 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * The update strategy of a Particle Filter.
+ */
+public interface UpdateStrategy {
+
+    /**
+     * Update particles. Particles can be killed too (i.e. for updating and filtering together).
+     * In parallel mode disjoint ranges are handled at the same time by different threads: only
+     * the particles in the range may be written.
+     * @param particles
+     * @param from First index (inclusive) of the particles to update.
+     * @param to Last index (exclusive) of the particles to update.
+     * @param random The randomness to use for this range.
+     */
+    void update(ParticleSet particles, int from, int to, RandomStream random);
+}
@@ -0,0 +1,92 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+
+/**
+ * Running sums of the weighted particles' positions: SUM(w), SUM(w*x), SUM(w*y) and the second
+ * moments. They are filled while the particles are visited anyway (see MomentsResamplingStrategy),
+ * so the weighted mean and the covariance cost no extra pass. The mean is made into a position
+ * only when asked for.
+ */
+public class WeightedMoments {
+
+    private int count;
+    private double weights;
+    private double sumX, sumY;
+    private double sumXX, sumXY, sumYY;
+
+    // Made on demand
+    private XYPosition mean;
+
+    public void clear() {
+        count = 0;
+        weights = 0.;
+        sumX = sumY = 0.;
+        sumXX = sumXY = sumYY = 0.;
+        mean = null;
+    }
+
+    public void add(float x, float y, float weight) {
+        count++;
+        weights += weight;
+        double wx = (double) weight * x;
+        double wy = (double) weight * y;
+        sumX += wx;
+        sumY += wy;
+        sumXX += wx * x;
+        sumXY += wx * y;
+        sumYY += wy * y;
+        mean = null;
+    }
+
+    /**
+     * Starts again from all the particles of a set, when the sums weren't filled.
+     * @param particles
+     */
+    public void accumulate(ParticleSet particles) {
+        clear();
+        for(int i = 0; i < particles.size(); i++)
+            add(particles.getX(i), particles.getY(i), particles.getWeight(i));
+    }
+
+    /**
+     * @return The number of particles added since the last clear().
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The weighted mean position, or null if the weights sum to zero.
+     */
+    public XYPosition getMean() {
+        if(mean == null && weights > 0.)
+            mean = new XYPosition((float) (sumX / weights), (float) (sumY / weights));
+        return mean;
+    }
+
+    /**
+     * @return The weighted variance of x, 0 if the weights sum to zero.
+     */
+    public float getVarianceX() {
+        return (weights > 0. ? (float) Math.max(0., sumXX / weights - square(sumX / weights)) : 0.f);
+    }
+
+    /**
+     * @return The weighted variance of y, 0 if the weights sum to zero.
+     */
+    public float getVarianceY() {
+        return (weights > 0. ? (float) Math.max(0., sumYY / weights - square(sumY / weights)) : 0.f);
+    }
+
+    /**
+     * @return The weighted covariance of x and y, 0 if the weights sum to zero.
+     */
+    public float getCovarianceXY() {
+        return (weights > 0. ? (float) (sumXY / weights - (sumX / weights) * (sumY / weights)) : 0.f);
+    }
+
+    private static double square(double a) {
+        return a * a;
+    }
+}
@@ -0,0 +1,164 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * Base class for resampling by weight.
+ * <p>
+ * The particles are resampled only if they aren't as many as the target number or if their
+ * effective sample size, 1/SUM(w^2) with normalized weights, falls below a fraction of the
+ * target number; otherwise their weights are just normalized. Subclasses decide how many copies
+ * of every particle the new generation has. Copies are made in place, over the particles with
+ * no copies, in linear time and without allocating (apart from growing the buffers).
+ * After resampling every particle has weight 1/target. The final pass over the weights fills
+ * the moments of the new generation, if any.
+ */
+public abstract class WeightedResamplingStrategy implements BoundedResamplingStrategy, MomentsResamplingStrategy {
+
+    public static final float DEFAULT_ESS_THRESHOLD = .5f;
+
+    private int targetNumber;
+    private int maxParticles = Integer.MAX_VALUE;
+    private final float essThreshold;
+
+    // Copies of every particle in the new generation
+    private int[] counts = new int[0];
+
+    private WeightedMoments moments;
+
+    /**
+     * @param targetNumber The number of particles after resampling.
+     * @param essThreshold Resampling happens when the effective sample size is less than
+     *                     essThreshold*targetNumber: 1 resamples at every step, 0 only when
+     *                     particles are missing.
+     */
+    public WeightedResamplingStrategy(int targetNumber, float essThreshold) {
+        if(targetNumber <= 0)
+            throw new IllegalArgumentException("targetNumber must be positive");
+        this.targetNumber = targetNumber;
+        this.essThreshold = essThreshold;
+    }
+
+    public int getTargetNumber() {
+        return targetNumber;
+    }
+
+    public void setTargetNumber(int targetNumber) {
+        if(targetNumber <= 0)
+            throw new IllegalArgumentException("targetNumber must be positive");
+        this.targetNumber = targetNumber;
+    }
+
+    /**
+     * @param maxParticles Caps the target number.
+     */
+    @Override
+    public void setMaxParticles(int maxParticles) {
+        if(maxParticles <= 0)
+            throw new IllegalArgumentException("maxParticles must be positive");
+        this.maxParticles = maxParticles;
+    }
+
+    /**
+     * @param moments Filled with the new generation, or null.
+     */
+    @Override
+    public void setMoments(WeightedMoments moments) {
+        this.moments = moments;
+    }
+
+    @Override
+    public void regenerate(ParticleSet particles, RandomStream random) {
+        int n = particles.size();
+        if(n == 0)
+            return;
+        int m = Math.min(targetNumber, maxParticles);
+
+        // Weights sum and effective sample size
+        double sum = 0.;
+        double squaresSum = 0.;
+        for(int i = 0; i < n; i++) {
+            double w = particles.getWeight(i);
+            sum += w;
+            squaresSum += w * w;
+        }
+        if(!(sum > 0.) || Double.isInfinite(sum)) {
+            // Degenerate weights: start again from uniform ones
+            for(int i = 0; i < n; i++)
+                particles.setWeight(i, 1.f);
+            sum = n;
+            squaresSum = n;
+        }
+        double ess = sum * sum / squaresSum;
+
+        if(n == m && ess >= essThreshold * m) {
+            float norm = (float) (1. / sum);
+            for(int i = 0; i < n; i++) {
+                float weight = particles.getWeight(i) * norm;
+                particles.setWeight(i, weight);
+                if(moments != null)
+                    moments.add(particles.getX(i), particles.getY(i), weight);
+            }
+            return;
+        }
+
+        if(counts.length < n)
+            counts = new int[Math.max(n, counts.length * 2)];
+        computeCounts(particles, n, sum, m, counts, random);
+        replicate(particles, n, counts, m, moments);
+    }
+
+    /**
+     * @param particles The particles.
+     * @param n The number of particles.
+     * @param weightsSum The sum of the particles' weights.
+     * @param m The number of particles to draw.
+     * @param counts Output: counts[i] is the number of copies of particle i, for i in [0,n).
+     *               The counts sum to m.
+     * @param random
+     */
+    protected abstract void computeCounts(
+            ParticleSet particles, int n, double weightsSum, int m, int[] counts, RandomStream random);
+
+    /**
+     * Makes the new generation from the counts: every drawn particle keeps its slot, its other
+     * copies go in the slots of the particles that weren't drawn, then at the end of the set.
+     */
+    private static void replicate(ParticleSet particles, int n, int[] counts, int m, WeightedMoments moments) {
+        particles.ensureCapacity(m);
+
+        int hole = nextHole(counts, 0, n);
+        for(int i = 0; i < n; i++) {
+            float x = particles.getX(i);
+            float y = particles.getY(i);
+            for(int c = 1; c < counts[i]; c++) {
+                if(hole < n) {
+                    particles.setPosition(hole, x, y);
+                    counts[hole] = 1;
+                    hole = nextHole(counts, hole + 1, n);
+                } else
+                    particles.add(x, y, 0.f);
+            }
+        }
+
+        // Fewer particles than before: drop the slots left empty
+        if(hole < n) {
+            for(; hole < n; hole = nextHole(counts, hole + 1, n))
+                particles.kill(hole);
+            particles.compact();
+        }
+
+        float weight = 1.f / m;
+        for(int i = 0; i < m; i++) {
+            particles.setWeight(i, weight);
+            if(moments != null)
+                moments.add(particles.getX(i), particles.getY(i), weight);
+        }
+    }
+
+    private static int nextHole(int[] counts, int from, int n) {
+        while(from < n && counts[from] != 0)
+            from++;
+        return from;
+    }
+}
@@ -0,0 +1,222 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.observer.Observer;
+import it.cnr.isti.wnlab.indoornavigation.types.RawData;
+
+/**
+ * Given a ( (x,y) , value ) fingerprint map, the instance of a DistancesMap represents the
+ * collection of pairs ( (x,y) , distance ) where distances refer to the last observed measurement.
+ * <p>
+ * This class has a lazy policy by default: the map is actually made only with the first
+ * "getDistances()". In eager mode (built with an executor) every measurement starts K-NN on the
+ * executor, and getDistances() returns without blocking the last completed result (so it may be
+ * stale, or null before the first K-NN completes). A measurement that is still queued when a
+ * newer one arrives is skipped, and a K-NN that is already running stops at its next check (see
+ * FingerprintMap.Cancellation), so only the newest measurement's result is published. Until then
+ * readers keep getting the previous one.
+ *
+ * @param <P>
+ * @param <T>
+ */
+public class DistancesMap<P extends XYPosition, T extends RawData> implements Observer<T> {
+
+    private FingerprintMap<P,T> fingerprintMap;
+    private volatile T lastMeasurement;
+    private List<PositionDistance<P>> distanceMap;
+    private PositionDistance.Filter policy;
+    private int mK;
+
+    // Eager mode (null executor means lazy)
+    private final ExecutorService executor;
+    private final AtomicLong generation;
+    private final AtomicReference<Snapshot<P>> snapshot;
+    private Future<?> pending;
+
+    public DistancesMap(
+            FingerprintMap<P,T> fingerprintMap,
+            int k,
+            PositionDistance.Filter policy
+    ) {
+        this(fingerprintMap, k, policy, null);
+    }
+
+    /**
+     * @param fingerprintMap
+     * @param k
+     * @param policy
+     * @param executor If not null, K-NN is computed eagerly on it.
+     */
+    public DistancesMap(
+            FingerprintMap<P,T> fingerprintMap,
+            int k,
+            PositionDistance.Filter policy,
+            ExecutorService executor
+    ) {
+        this.fingerprintMap = fingerprintMap;
+        this.policy = policy;
+        this.mK = k;
+        this.executor = executor;
+        this.generation = new AtomicLong();
+        this.snapshot = new AtomicReference<>();
+    }
+
+    /**
+     * @return The nearest K positions to the last measurement, or null if there isn't any. In
+     * eager mode it's the last completed (unmodifiable) result.
+     */
+    public List<PositionDistance<P>> getDistances() {
+
+        // Eager mode: never compute here
+        if(executor != null) {
+            Snapshot<P> last = snapshot.get();
+            return (last != null ? last.distances : null);
+        }
+
+        // No available measurements yet
+        if(lastMeasurement == null)
+            return null;
+
+        // A new measurement arrived and the old map was invalidated
+        if(distanceMap == null)
+            distanceMap = fingerprintMap.findNearestK(lastMeasurement, mK, policy);
+
+        return distanceMap;
+    }
+
+    /**
+     * @param center
+     * @param radius
+     * @return The nearest K positions among the ones within radius from center, or null if no
+     * measurement is available yet. The result is not cached.
+     */
+    public List<PositionDistance<P>> getDistancesWithin(XYPosition center, float radius) {
+        if(lastMeasurement == null)
+            return null;
+        return fingerprintMap.findNearestK(lastMeasurement, mK, center, radius, policy);
+    }
+
+    public XYPosition findWeightedAveragePosition() {
+        return findWeightedAveragePosition(getDistances());
+    }
+
+    @Override
+    public void notify(T data) {
+        lastMeasurement = data;
+        distanceMap = null;
+
+        if(executor != null)
+            submit(data);
+    }
+
+    private synchronized void submit(T data) {
+        // Drop the previous computation if it hasn't started yet; a running one sees the new
+        // generation and stops
+        long current = generation.incrementAndGet();
+        if(pending != null)
+            pending.cancel(false);
+        pending = executor.submit(new NearestKTask(data, current));
+    }
+
+    /**
+     * Publishes a result unless a newer one has already been published.
+     */
+    private void publish(Snapshot<P> result) {
+        while(true) {
+            Snapshot<P> last = snapshot.get();
+            if(last != null && last.generation >= result.generation)
+                return;
+            if(snapshot.compareAndSet(last, result))
+                return;
+        }
+    }
+
+    public static <A extends XYPosition>
+    XYPosition findWeightedAveragePosition(List<PositionDistance<A>> distances) {
+
+        if(distances != null && !distances.isEmpty()) {
+
+            // Do weighted average
+            float avgX = 0.f;
+            float avgY = 0.f;
+            float weightSum = 0.f;
+            for (PositionDistance<A> p : distances) {
+                float weight = 1 / p.distance;
+                avgX += weight * p.position.x;
+                avgY += weight * p.position.y;
+                weightSum += weight;
+            }
+            avgX /= weightSum;
+            avgY /= weightSum;
+
+            // Return position
+            return new XYPosition(avgX, avgY);
+
+        } else
+            return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder csv = new StringBuilder();
+        csv
+                .append("Measurement:").append(lastMeasurement.toString()).append("\n")
+                .append("Distances:");
+        for(PositionDistance<P> pd : getDistances())
+            csv.append("\n").append(pd.position).append(",").append(pd.distance);
+
+        return csv.toString();
+    }
+
+    /**
+     * K-NN of a measurement, for the eager mode.
+     */
+    private class NearestKTask implements Runnable, FingerprintMap.Cancellation {
+
+        private final T measurement;
+        private final long generation;
+
+        NearestKTask(T measurement, long generation) {
+            this.measurement = measurement;
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            // A newer measurement arrived while this one was waiting
+            if(DistancesMap.this.generation.get() != generation)
+                return;
+
+            // Null if a newer measurement arrived in the meanwhile
+            List<PositionDistance<P>> distances = fingerprintMap.findNearestK(measurement, mK, policy, this);
+            if(distances != null)
+                publish(new Snapshot<>(generation, Collections.unmodifiableList(distances)));
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return DistancesMap.this.generation.get() != generation;
+        }
+    }
+
+    /**
+     * Immutable result of the eager mode.
+     */
+    private static class Snapshot<P extends XYPosition> {
+
+        final long generation;
+        final List<PositionDistance<P>> distances;
+
+        Snapshot(long generation, List<PositionDistance<P>> distances) {
+            this.generation = generation;
+            this.distances = distances;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.types.RawData;
+import it.cnr.isti.wnlab.indoornavigation.utils.math.GeometryUtils;
+
+/**
+ * An object representing a generic fingerprint map with some utility methods.
+ * @param <P>
+ * @param <T>
+ */
+public abstract class FingerprintMap<P extends XYPosition, T extends RawData> {
+
+    // Rows scanned between two checks of a K-NN query's cancellation
+    protected static final int CANCELLATION_BLOCK = 1024;
+
+    /**
+     * Stops a running K-NN query whose result isn't needed any more. It is checked about every
+     * CANCELLATION_BLOCK rows, on the querying thread.
+     */
+    public interface Cancellation {
+        boolean isCancelled();
+    }
+
+    // Grid over row positions, built with the first position-constrained query
+    private volatile SpatialGrid grid;
+
+    // K-NN query buffers, one per querying thread
+    private final ThreadLocal<QueryBuffers> buffers = new ThreadLocal<QueryBuffers>() {
+        @Override
+        protected QueryBuffers initialValue() {
+            return new QueryBuffers();
+        }
+    };
+
+    /**
+     * Rows are stored by subclasses, in the layout that suits their distance.
+     */
+    protected FingerprintMap() {
+    }
+
+    /**
+     * @return The number of rows (reference points) in the map.
+     */
+    public abstract int size();
+
+    /**
+     * @param row
+     * @return The position of the specified row.
+     */
+    protected abstract P getPosition(int row);
+
+    /**
+     * @param row
+     * @return The x coordinate of the specified row.
+     */
+    protected float getX(int row) {
+        return getPosition(row).x;
+    }
+
+    /**
+     * @param row
+     * @return The y coordinate of the specified row.
+     */
+    protected float getY(int row) {
+        return getPosition(row).y;
+    }
+
+    /**
+     * @param measurement
+     * @param row
+     * @return The distance between the measurement and the value of the specified row.
+     */
+    protected abstract float distanceTo(T measurement, int row);
+
+    /**
+     * Computes the distances between the measurement and every row.
+     * @param measurement
+     * @param distances Output array: distances[i] is the distance from the i-th row.
+     */
+    protected void computeDistances(T measurement, float[] distances) {
+        computeDistances(measurement, distances, 0, size());
+    }
+
+    /**
+     * Computes the distances between the measurement and the rows in [from,to).
+     * Override this for a faster pass over the map.
+     * @param measurement
+     * @param distances Output array: distances[i] is the distance from the i-th row.
+     * @param from First row (inclusive).
+     * @param to Last row (exclusive).
+     */
+    protected void computeDistances(T measurement, float[] distances, int from, int to) {
+        for(int i = from; i < to; i++)
+            distances[i] = distanceTo(measurement, i);
+    }
+
+    /**
+     * K-NN implementation.
+     * Only the best K rows are kept while scanning the map, so no full sort is needed.
+     * @param measurement
+     * @param k The "K" of K-NN
+     * @param filterPolicy can be null. If it isn't, it is the policy for choosing if a fingerprint
+     *                     must be evaluated or not. It is asked only about rows that would be
+     *                     among the nearest K.
+     * @return a distance-ordered list of nearest K positions.
+     */
+    public List<PositionDistance<P>> findNearestK(
+            T measurement,
+            int k,
+            PositionDistance.Filter filterPolicy
+    ) {
+        return findNearestK(measurement, k, filterPolicy, null);
+    }
+
+    /**
+     * K-NN that can be stopped while running.
+     * Subclasses with a faster K-NN override this one.
+     * @param measurement
+     * @param k The "K" of K-NN
+     * @param filterPolicy can be null. Same as in findNearestK(T,int,Filter).
+     * @param cancellation can be null. Checked about every CANCELLATION_BLOCK rows.
+     * @return a distance-ordered list of nearest K positions, or null if cancelled.
+     */
+    public List<PositionDistance<P>> findNearestK(
+            T measurement,
+            int k,
+            PositionDistance.Filter filterPolicy,
+            Cancellation cancellation
+    ) {
+        int n = size();
+        float[] distances = buffers.get().getDistances(n);
+        NearestKSelector selector = getSelector(k);
+        for(int from = 0; from < n; from += CANCELLATION_BLOCK) {
+            if(cancellation != null && cancellation.isCancelled())
+                return null;
+
+            // Distances from a block of rows, then keep the nearest K rows
+            int to = Math.min(n, from + CANCELLATION_BLOCK);
+            computeDistances(measurement, distances, from, to);
+            for(int i = from; i < to; i++) {
+                float distance = distances[i];
+                if(selector.accepts(i, distance)
+                        && (filterPolicy == null || filterPolicy.isValid(getPosition(i), distance)))
+                    selector.offer(i, distance);
+            }
+        }
+
+        return collectNearest(selector);
+    }
+
+    /**
+     * K-NN restricted to the rows within radius from center: only the grid cells overlapping the
+     * circle are visited, so the measurement is compared with the nearby rows only.
+     * @param measurement
+     * @param k The "K" of K-NN
+     * @param center
+     * @param radius
+     * @param filterPolicy can be null. Same as in findNearestK(T,int,Filter).
+     * @return a distance-ordered list of nearest K positions in the circle.
+     */
+    public List<PositionDistance<P>> findNearestK(
+            T measurement,
+            int k,
+            XYPosition center,
+            float radius,
+            PositionDistance.Filter filterPolicy
+    ) {
+        SpatialGrid grid = getSpatialGrid();
+        NearestKSelector selector = getSelector(k);
+
+        // Cells overlapping the circle's bounding box, one more per side against rounding
+        int minColumn = Math.max(grid.column(center.x - radius) - 1, 0);
+        int maxColumn = grid.column(center.x + radius) + 1;
+        int minRow = Math.max(grid.row(center.y - radius) - 1, 0);
+        int maxRow = grid.row(center.y + radius) + 1;
+        for(int r = minRow; r <= maxRow; r++) {
+            for(int c = minColumn; c <= maxColumn; c++) {
+                if(!grid.isCell(c, r))
+                    continue;
+                int cell = grid.cellIndex(c, r);
+                for(int i = grid.getCellStart(cell); i < grid.getCellEnd(cell); i++) {
+                    int row = grid.getRow(i);
+                    if(!GeometryUtils.isPointInCircle(getX(row), getY(row), center.x, center.y, radius))
+                        continue;
+                    float distance = distanceTo(measurement, row);
+                    if(selector.accepts(row, distance)
+                            && (filterPolicy == null || filterPolicy.isValid(getPosition(row), distance)))
+                        selector.offer(row, distance);
+                }
+            }
+        }
+
+        return collectNearest(selector);
+    }
+
+    private SpatialGrid getSpatialGrid() {
+        SpatialGrid g = grid;
+        if(g == null) {
+            synchronized(this) {
+                g = grid;
+                if(g == null) {
+                    int n = size();
+                    float[] x = new float[n];
+                    float[] y = new float[n];
+                    for(int i = 0; i < n; i++) {
+                        x[i] = getX(i);
+                        y[i] = getY(i);
+                    }
+                    g = new SpatialGrid(x, y, n);
+                    grid = g;
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param k
+     * @return This thread's selector, ready for a new K-NN query.
+     */
+    protected NearestKSelector getSelector(int k) {
+        NearestKSelector selector = buffers.get().selector;
+        selector.reset(k);
+        return selector;
+    }
+
+    /**
+     * @param selector
+     * @return a distance-ordered list of the rows selected by the selector.
+     */
+    protected List<PositionDistance<P>> collectNearest(NearestKSelector selector) {
+        selector.sort();
+        int size = selector.size();
+        ArrayList<PositionDistance<P>> nearest = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+            nearest.add(new PositionDistance<>(getPosition(selector.getRow(i)), selector.getDistance(i)));
+        return nearest;
+    }
+
+    /**
+     * @param measurement
+     * @param policy the acceptance policy for positions. If null every point will be accepted.
+     * @return An unordered list of all points in database with their row-distances from measurement.
+     */
+    public List<PositionDistance<P>> getDistancedPoints(T measurement, PositionDistance.Filter policy) {
+        // For each registered position calculate distance between row and measurement
+        int n = size();
+        float[] distances = new float[n];
+        computeDistances(measurement, distances);
+        ArrayList<PositionDistance<P>> distancedPositions = new ArrayList<>();
+        for(int i = 0; i < n; i++) {
+            // Add results to a list if distance is acceptable
+            float distance = distances[i];
+            P position = getPosition(i);
+            if(policy == null || policy.isValid(position,distance))
+                distancedPositions.add(new PositionDistance<>(position, distance));
+        }
+
+        return distancedPositions;
+    }
+
+    /**
+     * Calculate the distance between one measurement and another.
+     * @param data1
+     * @param data2
+     * @return The always positive distance between the two measurements.
+     */
+    protected abstract float distanceBetween(T data1, T data2);
+
+    /**
+     * Buffers reused by the K-NN queries of a thread.
+     */
+    private static class QueryBuffers {
+        final NearestKSelector selector = new NearestKSelector();
+        private float[] distances = new float[0];
+
+        float[] getDistances(int n) {
+            if(distances.length < n)
+                distances = new float[n];
+            return distances;
+        }
+    }
+}
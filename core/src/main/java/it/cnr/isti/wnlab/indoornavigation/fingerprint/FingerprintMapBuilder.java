@@ -0,0 +1,51 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import it.cnr.isti.wnlab.indoornavigation.utils.io.CsvTokenizer;
+
+/**
+ * A factory class for FingerprintMap objects.
+ * @param <F> the FingerprintMap (sub)type to build.
+ */
+public abstract class FingerprintMapBuilder<F extends FingerprintMap> {
+    /**
+     * @param file The fingerprint file, either CSV or binary (see RadioMapFormat).
+     * @return A ready-to-use FingerprintMap instance.
+     * @throws IOException if the file can't be read or is malformed (CsvFormatException tells
+     * where).
+     */
+    public F build(File file) throws IOException {
+        if(RadioMapFormat.isRadioMap(file))
+            return build(RadioMapFormat.map(file));
+        try(Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return build(reader);
+        }
+    }
+
+    /**
+     * @param reader A CSV fingerprint.
+     * @return
+     */
+    public F build(Reader reader) throws IOException {
+        return build(new CsvTokenizer(reader));
+    }
+
+    /**
+     * @param csv
+     * @return
+     */
+    protected abstract F build(CsvTokenizer csv) throws IOException;
+
+    /**
+     * @param buffer A binary radio map, positioned at its header.
+     * @return
+     */
+    protected abstract F build(ByteBuffer buffer) throws IOException;
+}
@@ -0,0 +1,250 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+
+/**
+ * Static KD-tree over 3D points, for exact K-NN search with squared Euclidean distance.
+ * <p>
+ * The tree is implicit: points are permuted so that every range [lo,hi) has its splitting point
+ * in the middle, smaller coordinates on the left and greater on the right. Small ranges are
+ * leaves scanned linearly. Coordinates are copied in tree order for memory locality.
+ * <p>
+ * Points are compared by (distance, row) like the linear scan does, so the result is exactly the
+ * same. The tree is immutable and can be searched by many threads at once.
+ */
+class KdTree {
+
+    private static final int LEAF_SIZE = 8;
+
+    // Original row of the i-th point in tree order
+    private final int[] rows;
+
+    // Coordinates in tree order
+    private final float[] xs, ys, zs;
+
+    // Splitting axis (0,1,2) of the node whose splitting point is at index i
+    private final byte[] axes;
+
+    /**
+     * Builds the tree over the first n points of the arrays.
+     */
+    KdTree(float[] x, float[] y, float[] z, int n) {
+        rows = new int[n];
+        for(int i = 0; i < n; i++)
+            rows[i] = i;
+        axes = new byte[n];
+
+        // Arrange the permutation
+        float[][] coordinates = { x, y, z };
+        build(coordinates, 0, n);
+
+        // Copy coordinates in tree order
+        xs = new float[n];
+        ys = new float[n];
+        zs = new float[n];
+        for(int i = 0; i < n; i++) {
+            int row = rows[i];
+            xs[i] = x[row];
+            ys[i] = y[row];
+            zs[i] = z[row];
+        }
+    }
+
+    /**
+     * Rebuilds a tree from the permutation and the axes of another one (see getRows, getAxes).
+     */
+    KdTree(int[] rows, byte[] axes, float[] x, float[] y, float[] z) {
+        this.rows = rows;
+        this.axes = axes;
+        int n = rows.length;
+        xs = new float[n];
+        ys = new float[n];
+        zs = new float[n];
+        for(int i = 0; i < n; i++) {
+            int row = rows[i];
+            xs[i] = x[row];
+            ys[i] = y[row];
+            zs[i] = z[row];
+        }
+    }
+
+    /**
+     * Checks a tree rebuilt from data that may be corrupted: rows must be a permutation, and every
+     * splitting point must have a valid axis and split its range like build does.
+     * @return true if searches on this tree are exact.
+     */
+    boolean isConsistent() {
+        int n = rows.length;
+        if(axes.length != n)
+            return false;
+        boolean[] seen = new boolean[n];
+        for(int row : rows) {
+            if(row < 0 || row >= n || seen[row])
+                return false;
+            seen[row] = true;
+        }
+        return isConsistent(0, n);
+    }
+
+    private boolean isConsistent(int lo, int hi) {
+        if(hi - lo <= LEAF_SIZE)
+            return true;
+        int mid = (lo + hi) >>> 1;
+        int axis = axes[mid];
+        if(axis < 0 || axis > 2)
+            return false;
+        float[] c = (axis == 0 ? xs : (axis == 1 ? ys : zs));
+        float split = c[mid];
+        for(int i = lo; i < mid; i++)
+            if(c[i] > split)
+                return false;
+        for(int i = mid + 1; i < hi; i++)
+            if(c[i] < split)
+                return false;
+        return isConsistent(lo, mid) && isConsistent(mid + 1, hi);
+    }
+
+    /**
+     * @return The original row of every point in tree order.
+     */
+    int[] getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The splitting axis of every node.
+     */
+    byte[] getAxes() {
+        return axes;
+    }
+
+    private void build(float[][] coordinates, int lo, int hi) {
+        if(hi - lo <= LEAF_SIZE)
+            return;
+
+        // Split on the axis with the widest spread
+        int axis = 0;
+        float widest = -1.f;
+        for(int a = 0; a < 3; a++) {
+            float[] c = coordinates[a];
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for(int i = lo; i < hi; i++) {
+                float v = c[rows[i]];
+                if(v < min) min = v;
+                if(v > max) max = v;
+            }
+            if(max - min > widest) {
+                widest = max - min;
+                axis = a;
+            }
+        }
+
+        // Put the median in the middle
+        int mid = (lo + hi) >>> 1;
+        select(coordinates[axis], lo, hi, mid);
+        axes[mid] = (byte) axis;
+
+        build(coordinates, lo, mid);
+        build(coordinates, mid + 1, hi);
+    }
+
+    /**
+     * Quickselect: rearranges rows[lo,hi) so that rows[k] has the k-th coordinate, the ones
+     * before it aren't greater and the ones after it aren't smaller.
+     */
+    private void select(float[] c, int lo, int hi, int k) {
+        while(hi - lo > 1) {
+            // Median of three as pivot
+            float a = c[rows[lo]];
+            float b = c[rows[(lo + hi) >>> 1]];
+            float d = c[rows[hi - 1]];
+            float pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), d));
+
+            // Partition
+            int i = lo;
+            int j = hi - 1;
+            while(i <= j) {
+                while(c[rows[i]] < pivot) i++;
+                while(c[rows[j]] > pivot) j--;
+                if(i <= j) {
+                    int tmp = rows[i];
+                    rows[i] = rows[j];
+                    rows[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            // Go on with the side containing k (in between everything equals the pivot)
+            if(k <= j)
+                hi = j + 1;
+            else if(k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    /**
+     * Offers to the selector every point that can be one of the K nearest to (x,y,z).
+     * @param selector Already reset to the wanted K.
+     * @param filter Can be null. Asked only about points that would enter the selection.
+     * @param positions Row positions, for the filter.
+     * @param cancellation Can be null. Checked when entering subtrees of at least
+     *                     FingerprintMap.CANCELLATION_BLOCK points.
+     * @return false if the search was cancelled.
+     */
+    boolean search(float x, float y, float z, NearestKSelector selector,
+                   PositionDistance.Filter filter, XYPosition[] positions,
+                   FingerprintMap.Cancellation cancellation) {
+        return search(0, rows.length, x, y, z, selector, filter, positions, cancellation);
+    }
+
+    private boolean search(int lo, int hi, float x, float y, float z, NearestKSelector selector,
+                           PositionDistance.Filter filter, XYPosition[] positions,
+                           FingerprintMap.Cancellation cancellation) {
+        // Leaf
+        if(hi - lo <= LEAF_SIZE) {
+            for(int i = lo; i < hi; i++)
+                consider(i, x, y, z, selector, filter, positions);
+            return true;
+        }
+        if(cancellation != null && hi - lo >= FingerprintMap.CANCELLATION_BLOCK
+                && cancellation.isCancelled())
+            return false;
+
+        // Splitting point
+        int mid = (lo + hi) >>> 1;
+        consider(mid, x, y, z, selector, filter, positions);
+
+        // Nearer side first
+        int axis = axes[mid];
+        float diff = (axis == 0 ? x - xs[mid] : (axis == 1 ? y - ys[mid] : z - zs[mid]));
+        if(diff < 0) {
+            if(!search(lo, mid, x, y, z, selector, filter, positions, cancellation))
+                return false;
+            if(diff*diff <= selector.getWorstDistance())
+                return search(mid + 1, hi, x, y, z, selector, filter, positions, cancellation);
+        } else {
+            if(!search(mid + 1, hi, x, y, z, selector, filter, positions, cancellation))
+                return false;
+            if(diff*diff <= selector.getWorstDistance())
+                return search(lo, mid, x, y, z, selector, filter, positions, cancellation);
+        }
+        return true;
+    }
+
+    private void consider(int i, float x, float y, float z, NearestKSelector selector,
+                          PositionDistance.Filter filter, XYPosition[] positions) {
+        // Same operations as the linear scan, so that distances are bit-identical
+        float dx = x - xs[i];
+        float dy = y - ys[i];
+        float dz = z - zs[i];
+        float distance = dx*dx+dy*dy+dz*dz;
+        int row = rows[i];
+        if(selector.accepts(row, distance)
+                && (filter == null || filter.isValid(positions[row], distance)))
+            selector.offer(row, distance);
+    }
+}
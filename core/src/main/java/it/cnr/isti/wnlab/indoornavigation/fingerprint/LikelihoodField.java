@@ -0,0 +1,124 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import java.util.List;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+
+/**
+ * The fingerprint distance of a measurement, interpolated from its K nearest positions and
+ * rasterised onto a grid of square cells. It is built once per measurement, then the distance
+ * in a position, and its likelihood, are a lookup of the position's cell, whatever K is.
+ * Positions outside the grid take the value of the nearest border cell.
+ * The field is immutable and can be read by many threads at once.
+ */
+public class LikelihoodField {
+
+    public static final float DEFAULT_CELL_SIZE = .5f;
+
+    // The K nearest positions the field comes from
+    private final List<PositionDistance<XYPosition>> source;
+
+    private final float originX, originY;
+    private final float cellSize;
+    private final int columns, rows;
+
+    // Interpolated distance over maxLimit, and log(max(minLikelihood, 1 - that)), per cell
+    private final float[] relativeDistances;
+    private final float[] logLikelihoods;
+
+    /**
+     * @param distances The K nearest positions of the measurement.
+     * @param maxLimit The distance whose likelihood is minLikelihood.
+     * @param minLikelihood Lower bound of the likelihood.
+     * @param originX x of the grid's lower left corner.
+     * @param originY y of the grid's lower left corner.
+     * @param cellSize Side of the cells, in meters.
+     * @param columns
+     * @param rows
+     */
+    public LikelihoodField(
+            List<PositionDistance<XYPosition>> distances,
+            float maxLimit,
+            float minLikelihood,
+            float originX, float originY,
+            float cellSize, int columns, int rows
+    ) {
+        if(columns <= 0 || rows <= 0)
+            throw new IllegalArgumentException("The grid must have cells");
+        this.source = distances;
+        this.originX = originX;
+        this.originY = originY;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+
+        relativeDistances = new float[columns * rows];
+        logLikelihoods = new float[columns * rows];
+        for(int r = 0; r < rows; r++) {
+            float y = originY + (r + .5f) * cellSize;
+            for(int c = 0; c < columns; c++) {
+                float x = originX + (c + .5f) * cellSize;
+                int cell = r * columns + c;
+                if(maxLimit > 0.f) {
+                    float relative = interpolateDistance(x, y, distances) / maxLimit;
+                    relativeDistances[cell] = relative;
+                    logLikelihoods[cell] = (float) Math.log(Math.max(minLikelihood, 1.f - relative));
+                }
+                // else no information: distance 0, likelihood 1
+            }
+        }
+    }
+
+    /**
+     * @return The list the field was built from, to know whether it is still current.
+     */
+    public List<PositionDistance<XYPosition>> getSource() {
+        return source;
+    }
+
+    /**
+     * @return The interpolated distance in (x,y), over maxLimit.
+     */
+    public float getRelativeDistance(float x, float y) {
+        return relativeDistances[cell(x, y)];
+    }
+
+    /**
+     * @return log(max(minLikelihood, 1 - getRelativeDistance(x,y))).
+     */
+    public float getLogLikelihood(float x, float y) {
+        return logLikelihoods[cell(x, y)];
+    }
+
+    private int cell(float x, float y) {
+        int c = (int) Math.floor((x - originX) / cellSize);
+        int r = (int) Math.floor((y - originY) / cellSize);
+        c = (c < 0 ? 0 : (c >= columns ? columns - 1 : c));
+        r = (r < 0 ? 0 : (r >= rows ? rows - 1 : r));
+        return r * columns + c;
+    }
+
+    /**
+     * Inverse distance interpolation:
+     * distance = SUM(DISTANCE[Pi] / R(position,POINTS[Pi])) / SUM(R(position,POINTS[Pi]))
+     * @param px
+     * @param py
+     * @param distances
+     * @return The fingerprint distance in (px,py).
+     */
+    public static float interpolateDistance(float px, float py, List<PositionDistance<XYPosition>> distances) {
+        float positionDistance = 0.f;
+        float rSum = 0.f;
+        // Indexed loop: no iterator per position
+        for(int i = 0; i < distances.size(); i++) {
+            PositionDistance<XYPosition> posDis = distances.get(i);
+            float dx = posDis.position.x - px;
+            float dy = posDis.position.y - py;
+            float r = (float) Math.sqrt(dx*dx+dy*dy);
+            positionDistance += ( posDis.distance * (1/r) );
+            rSum += r;
+        }
+        positionDistance /= rSum;
+        return positionDistance;
+    }
+}
@@ -0,0 +1,254 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+import it.cnr.isti.wnlab.indoornavigation.utils.io.CsvTokenizer;
+
+/**
+ * FingerprintMap subtype for Magnetic Fingerprints.
+ * <p>
+ * Reference points are stored column by column (positions and field components in separate
+ * contiguous arrays), so the distance pass is a tight loop over primitive arrays.
+ */
+public class MagneticFingerprintMap extends FingerprintMap<XYPosition,MagneticField> {
+
+    // Columns: the i-th reference point is (px[i],py[i]) with field (mx[i],my[i],mz[i])
+    private float[] px, py;
+    private float[] mx, my, mz;
+    private int mSize;
+
+    // Row positions, shared by all the results and filter calls (built with the map)
+    private XYPosition[] rowPositions;
+
+    // Index over (mx,my,mz), built once by the builder
+    private KdTree index;
+
+    /**
+     * Empty map. This is the public no-arg constructor the class always had; maps with rows
+     * come from the Builder.
+     */
+    public MagneticFingerprintMap() {
+        px = new float[16];
+        py = new float[16];
+        mx = new float[16];
+        my = new float[16];
+        mz = new float[16];
+    }
+
+    /**
+     * Adds a reference point.
+     */
+    private void add(float x, float y, float fx, float fy, float fz) {
+        if(mSize == px.length) {
+            int capacity = mSize * 2;
+            px = Arrays.copyOf(px, capacity);
+            py = Arrays.copyOf(py, capacity);
+            mx = Arrays.copyOf(mx, capacity);
+            my = Arrays.copyOf(my, capacity);
+            mz = Arrays.copyOf(mz, capacity);
+        }
+        px[mSize] = x;
+        py[mSize] = y;
+        mx[mSize] = fx;
+        my[mSize] = fy;
+        mz[mSize] = fz;
+        mSize++;
+    }
+
+    /**
+     * Creates the positions of the rows currently in the map.
+     */
+    private void buildPositions() {
+        rowPositions = new XYPosition[mSize];
+        for(int i = 0; i < mSize; i++)
+            rowPositions[i] = new XYPosition(px[i], py[i]);
+    }
+
+    /**
+     * Builds the KD-tree over the field values currently in the map.
+     */
+    private void buildIndex() {
+        index = new KdTree(mx, my, mz, mSize);
+    }
+
+    /**
+     * Releases the unused capacity of the columns.
+     */
+    private void trim() {
+        px = Arrays.copyOf(px, mSize);
+        py = Arrays.copyOf(py, mSize);
+        mx = Arrays.copyOf(mx, mSize);
+        my = Arrays.copyOf(my, mSize);
+        mz = Arrays.copyOf(mz, mSize);
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    protected XYPosition getPosition(int row) {
+        return rowPositions[row];
+    }
+
+    @Override
+    protected float getX(int row) {
+        return px[row];
+    }
+
+    @Override
+    protected float getY(int row) {
+        return py[row];
+    }
+
+    @Override
+    protected float distanceTo(MagneticField measurement, int row) {
+        float dx = measurement.x - mx[row];
+        float dy = measurement.y - my[row];
+        float dz = measurement.z - mz[row];
+        return dx*dx+dy*dy+dz*dz;
+    }
+
+    /**
+     * @throws IllegalArgumentException if distances is shorter than to.
+     */
+    @Override
+    protected void computeDistances(MagneticField measurement, float[] distances, int from, int to) {
+        if(distances.length < to)
+            throw new IllegalArgumentException(
+                    "Distances buffer too short: " + distances.length + " < " + to);
+
+        // Local copies keep the loop free of field loads
+        float x = measurement.x;
+        float y = measurement.y;
+        float z = measurement.z;
+        float[] mx = this.mx;
+        float[] my = this.my;
+        float[] mz = this.mz;
+        for(int i = from; i < to; i++) {
+            float dx = x - mx[i];
+            float dy = y - my[i];
+            float dz = z - mz[i];
+            distances[i] = dx*dx+dy*dy+dz*dz;
+        }
+    }
+
+    /**
+     * K-NN in sub-linear time with the KD-tree, when available. The result is exactly the one of
+     * the linear scan.
+     */
+    @Override
+    public List<PositionDistance<XYPosition>> findNearestK(
+            MagneticField measurement,
+            int k,
+            PositionDistance.Filter filterPolicy,
+            Cancellation cancellation
+    ) {
+        if(index == null)
+            return super.findNearestK(measurement, k, filterPolicy, cancellation);
+
+        NearestKSelector selector = getSelector(k);
+        if(!index.search(measurement.x, measurement.y, measurement.z, selector, filterPolicy,
+                rowPositions, cancellation))
+            return null;
+        return collectNearest(selector);
+    }
+
+    @Override
+    protected float distanceBetween(MagneticField data1, MagneticField data2) {
+        float dx = data1.x - data2.x;
+        float dy = data1.y - data2.y;
+        float dz = data1.z - data2.z;
+        return dx*dx+dy*dy+dz*dz;
+    }
+
+    /**
+     * Writes the map, with its index, in the binary format of RadioMapFormat.
+     * @param file
+     */
+    public void writeRadioMap(File file) throws IOException {
+        int flags = (index != null ? RadioMapFormat.FLAG_INDEX : 0);
+        try(RadioMapFormat.Writer out =
+                    new RadioMapFormat.Writer(file, RadioMapFormat.TYPE_MAGNETIC, flags)) {
+            out.putInt(mSize);
+            out.putFloats(px, mSize);
+            out.putFloats(py, mSize);
+            out.putFloats(mx, mSize);
+            out.putFloats(my, mSize);
+            out.putFloats(mz, mSize);
+            if(index != null) {
+                out.putInts(index.getRows(), mSize);
+                out.putBytes(index.getAxes(), mSize);
+            }
+        }
+    }
+
+    /**
+     * Builder class for MagneticFingerprintMap.
+     */
+    public static class Builder extends FingerprintMapBuilder<MagneticFingerprintMap> {
+
+        public MagneticFingerprintMap build(CsvTokenizer csv) throws IOException {
+            // Instantiate fingerprint object
+            MagneticFingerprintMap fingerprint = new MagneticFingerprintMap();
+
+            // Parse the records: x,y,mx,my,mz
+            while(csv.nextRecord()) {
+                // Parse coordinate
+                float x = csv.nextFloat();
+                float y = csv.nextFloat();
+
+                // Parse MF values
+                float mx = csv.nextFloat();
+                float my = csv.nextFloat();
+                float mz = csv.nextFloat();
+
+                // Populate map
+                fingerprint.add(x, y, mx, my, mz);
+            }
+
+            // Return fingerprint instance
+            fingerprint.trim();
+            fingerprint.buildPositions();
+            fingerprint.buildIndex();
+            return fingerprint;
+        }
+
+        public MagneticFingerprintMap build(ByteBuffer buffer) throws IOException {
+            int flags = RadioMapFormat.readHeader(buffer, RadioMapFormat.TYPE_MAGNETIC);
+            int rows = RadioMapFormat.getCount(buffer);
+
+            // Columns
+            MagneticFingerprintMap fingerprint = new MagneticFingerprintMap();
+            fingerprint.px = RadioMapFormat.getFloats(buffer, rows);
+            fingerprint.py = RadioMapFormat.getFloats(buffer, rows);
+            fingerprint.mx = RadioMapFormat.getFloats(buffer, rows);
+            fingerprint.my = RadioMapFormat.getFloats(buffer, rows);
+            fingerprint.mz = RadioMapFormat.getFloats(buffer, rows);
+            fingerprint.mSize = rows;
+            fingerprint.buildPositions();
+
+            // Index, built now if it isn't in the file. A corrupted tree would silently give
+            // wrong neighbours, so it is checked whole.
+            if((flags & RadioMapFormat.FLAG_INDEX) != 0) {
+                int[] treeRows = RadioMapFormat.getInts(buffer, rows);
+                RadioMapFormat.checkIndices(treeRows, rows);
+                byte[] axes = RadioMapFormat.getBytes(buffer, rows);
+                fingerprint.index = new KdTree(treeRows, axes,
+                        fingerprint.mx, fingerprint.my, fingerprint.mz);
+                if(!fingerprint.index.isConsistent())
+                    throw new IOException("Corrupted radio map: inconsistent KD-tree");
+            } else
+                fingerprint.buildIndex();
+
+            return fingerprint;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+/**
+ * Bounded selection of the K nearest (row, distance) pairs of a fingerprint map.
+ * <p>
+ * It keeps only the current best K pairs in a max-heap made of two primitive arrays, so scanning
+ * a map doesn't allocate anything. Buffers grow when needed and are reused between calls.
+ * Pairs are ordered by distance and then by row index, so the selection is deterministic and
+ * equal to the first K elements of a stable sort on the distance.
+ * <p>
+ * NOT thread safe: use one instance per thread.
+ */
+public class NearestKSelector {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Heap arrays: the root (index 0) is the worst selected pair
+    private int[] mRows;
+    private float[] mDistances;
+
+    private int mK;
+    private int mSize;
+
+    public NearestKSelector() {
+        mRows = new int[DEFAULT_CAPACITY];
+        mDistances = new float[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Empties the selector and prepares it for a new selection.
+     * @param k The "K" of K-NN.
+     */
+    public void reset(int k) {
+        if(k > mRows.length) {
+            mRows = new int[k];
+            mDistances = new float[k];
+        }
+        mK = Math.max(k, 0);
+        mSize = 0;
+    }
+
+    /**
+     * @return The number of selected pairs.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return true if K pairs have already been selected.
+     */
+    public boolean isFull() {
+        return mSize == mK;
+    }
+
+    /**
+     * @return The greatest selected distance if the selector is full, +infinity otherwise.
+     */
+    public float getWorstDistance() {
+        return (mSize == mK && mK > 0 ? mDistances[0] : Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param row
+     * @param distance
+     * @return true if the pair would be selected by offer(row, distance).
+     */
+    public boolean accepts(int row, float distance) {
+        if(mSize < mK)
+            return true;
+        return mK > 0 && isLess(distance, row, mDistances[0], mRows[0]);
+    }
+
+    /**
+     * Selects the pair if it is one of the K nearest seen since the last reset.
+     * @param row
+     * @param distance
+     */
+    public void offer(int row, float distance) {
+        if(mSize < mK) {
+            // Not full yet: append and sift up
+            int i = mSize++;
+            while(i > 0) {
+                int parent = (i - 1) >>> 1;
+                if(!isLess(mDistances[parent], mRows[parent], distance, row))
+                    break;
+                mRows[i] = mRows[parent];
+                mDistances[i] = mDistances[parent];
+                i = parent;
+            }
+            mRows[i] = row;
+            mDistances[i] = distance;
+        } else if(mK > 0 && isLess(distance, row, mDistances[0], mRows[0])) {
+            // Replace the worst one
+            siftDown(0, mSize, row, distance);
+        }
+    }
+
+    /**
+     * Sorts the selected pairs by ascending distance. After this call the selector can be read
+     * with getRow(i) and getDistance(i), but it must be reset before offering new pairs.
+     */
+    public void sort() {
+        // Heap sort: move the current worst pair to the end of the heap
+        for(int end = mSize - 1; end > 0; end--) {
+            int row = mRows[end];
+            float distance = mDistances[end];
+            mRows[end] = mRows[0];
+            mDistances[end] = mDistances[0];
+            siftDown(0, end, row, distance);
+        }
+    }
+
+    /**
+     * @param i
+     * @return The row of the i-th selected pair.
+     */
+    public int getRow(int i) {
+        return mRows[i];
+    }
+
+    /**
+     * @param i
+     * @return The distance of the i-th selected pair.
+     */
+    public float getDistance(int i) {
+        return mDistances[i];
+    }
+
+    /**
+     * Puts (row,distance) in the hole at index i, moving it down in the first n heap elements.
+     */
+    private void siftDown(int i, int n, int row, float distance) {
+        int half = n >>> 1;
+        while(i < half) {
+            int child = 2*i + 1;
+            int right = child + 1;
+            if(right < n && isLess(mDistances[child], mRows[child], mDistances[right], mRows[right]))
+                child = right;
+            if(!isLess(distance, row, mDistances[child], mRows[child]))
+                break;
+            mRows[i] = mRows[child];
+            mDistances[i] = mDistances[child];
+            i = child;
+        }
+        mRows[i] = row;
+        mDistances[i] = distance;
+    }
+
+    /**
+     * @return true if (d1,r1) comes before (d2,r2).
+     */
+    private static boolean isLess(float d1, int r1, float d2, int r2) {
+        return d1 < d2 || (d1 == d2 && r1 < r2);
+    }
+}
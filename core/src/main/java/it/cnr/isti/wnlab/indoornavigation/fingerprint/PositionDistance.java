@@ -22,7 +22,7 @@ public class PositionDistance<P extends XYPosition> {
      * @return a negative integer if this pair is nearer (less distanced) than the argument's.
      */
     public int compareTo(PositionDistance p) {
-        return (int) (distance - p.distance);
+        return Float.compare(distance, p.distance);
     }
 
     @Override
@@ -33,4 +33,4 @@ public class PositionDistance<P extends XYPosition> {
     public interface Filter {
         boolean isValid(XYPosition position, float distance);
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,55 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Offline converter from the CSV fingerprint files made by FingerprintDataMerger to the binary
+ * format of RadioMapFormat. The search index is computed here and stored in the output file.
+ * <p>
+ * Usage: RadioMapConverter (magnetic|wifi) input.csv output.rmap
+ */
+public class RadioMapConverter {
+
+    private RadioMapConverter() {}
+
+    /**
+     * @param csv A magnetic fingerprint CSV file.
+     * @param output The binary file to write.
+     */
+    public static void convertMagnetic(File csv, File output) throws IOException {
+        MagneticFingerprintMap map = new MagneticFingerprintMap.Builder().build(csv);
+        if(map == null)
+            throw new IOException("Can't read " + csv);
+        map.writeRadioMap(output);
+    }
+
+    /**
+     * @param csv A Wifi fingerprint CSV file.
+     * @param output The binary file to write.
+     */
+    public static void convertWifi(File csv, File output) throws IOException {
+        WifiFingerprintMap map = new WifiFingerprintMap.Builder().build(csv);
+        if(map == null)
+            throw new IOException("Can't read " + csv);
+        map.writeRadioMap(output);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length != 3) {
+            System.err.println("Usage: RadioMapConverter (magnetic|wifi) input.csv output.rmap");
+            System.exit(1);
+        }
+
+        File csv = new File(args[1]);
+        File output = new File(args[2]);
+        if("magnetic".equals(args[0]))
+            convertMagnetic(csv, output);
+        else if("wifi".equals(args[0]))
+            convertWifi(csv, output);
+        else {
+            System.err.println("Unknown map type: " + args[0]);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Binary radio map format. All values are little endian and every section starts at a multiple
+ * of 4 bytes.
+ * <pre>
+ * header:    magic "RMAP", version (int), type (int), flags (int)
+ * magnetic:  rows (int), x[rows], y[rows], mx[rows], my[rows], mz[rows] (floats)
+ *            [FLAG_INDEX] KD-tree permutation int[rows], axes byte[rows]
+ * wifi:      rows (int), bssids (int), aps (int),
+ *            bssids as (length (int), UTF-8 bytes), x[rows], y[rows] (floats),
+ *            row starts int[rows+1],
+ *            AP ids int[aps], AP RSSIs byte[aps]
+ *            [FLAG_INDEX] posting starts int[bssids+1], posting rows int[aps],
+ *            posting RSSIs byte[aps], rows by size int[rows]
+ * </pre>
+ * Files are read through a memory mapping, with bulk copies of every section into the map's
+ * arrays.
+ */
+public final class RadioMapFormat {
+
+    public static final int VERSION = 1;
+
+    public static final int TYPE_MAGNETIC = 1;
+    public static final int TYPE_WIFI = 2;
+
+    // The file contains the map's search index
+    public static final int FLAG_INDEX = 1;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] MAGIC = { 'R', 'M', 'A', 'P' };
+
+    private RadioMapFormat() {}
+
+    /**
+     * @param file
+     * @return true if the file starts with the radio map magic number.
+     */
+    public static boolean isRadioMap(File file) throws IOException {
+        try(FileInputStream in = new FileInputStream(file)) {
+            byte[] magic = new byte[MAGIC.length];
+            int read = 0;
+            int n;
+            while(read < magic.length && (n = in.read(magic, read, magic.length - read)) > 0)
+                read += n;
+            if(read < magic.length)
+                return false;
+            for(int i = 0; i < magic.length; i++)
+                if(magic[i] != MAGIC[i])
+                    return false;
+            return true;
+        }
+    }
+
+    /**
+     * @param file
+     * @return The whole file mapped read-only, positioned at the beginning.
+     */
+    public static ByteBuffer map(File file) throws IOException {
+        try(FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Reads and checks the header.
+     * @param buffer
+     * @param expectedType
+     * @return The header's flags.
+     */
+    static int readHeader(ByteBuffer buffer, int expectedType) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if(buffer.remaining() < 16)
+            throw new IOException("Truncated radio map header");
+        for(byte b : MAGIC)
+            if(buffer.get() != b)
+                throw new IOException("Not a radio map");
+        int version = buffer.getInt();
+        if(version != VERSION)
+            throw new IOException("Unsupported radio map version " + version);
+        int type = buffer.getInt();
+        if(type != expectedType)
+            throw new IOException("Radio map of type " + type + " where " + expectedType + " was expected");
+        return buffer.getInt();
+    }
+
+    /**
+     * @return A non negative count read from the buffer.
+     */
+    static int getCount(ByteBuffer buffer) throws IOException {
+        int count = buffer.getInt();
+        if(count < 0)
+            throw new IOException("Corrupted radio map: negative count " + count);
+        return count;
+    }
+
+    static float[] getFloats(ByteBuffer buffer, int n) throws IOException {
+        checkRemaining(buffer, 4L * n);
+        float[] values = new float[n];
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + 4 * n);
+        return values;
+    }
+
+    static int[] getInts(ByteBuffer buffer, int n) throws IOException {
+        checkRemaining(buffer, 4L * n);
+        int[] values = new int[n];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * n);
+        return values;
+    }
+
+    static byte[] getBytes(ByteBuffer buffer, int n) throws IOException {
+        checkRemaining(buffer, n);
+        byte[] values = new byte[n];
+        buffer.get(values);
+        align(buffer);
+        return values;
+    }
+
+    /**
+     * Checks that every value is in [0, bound), so that the array can be used for indexing.
+     */
+    static void checkIndices(int[] values, int bound) throws IOException {
+        for(int v : values)
+            if(v < 0 || v >= bound)
+                throw new IOException("Corrupted radio map: index " + v + " out of [0," + bound + ")");
+    }
+
+    /**
+     * Checks that the values are non decreasing, from 0 to last.
+     */
+    static void checkOffsets(int[] offsets, int last) throws IOException {
+        int previous = 0;
+        for(int v : offsets) {
+            if(v < previous)
+                throw new IOException("Corrupted radio map: decreasing offsets");
+            previous = v;
+        }
+        if(offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != last)
+            throw new IOException("Corrupted radio map: bad offsets");
+    }
+
+    private static void checkRemaining(ByteBuffer buffer, long bytes) throws IOException {
+        if(buffer.remaining() < bytes)
+            throw new IOException("Truncated radio map");
+    }
+
+    private static void align(ByteBuffer buffer) {
+        buffer.position(Math.min((buffer.position() + 3) & ~3, buffer.limit()));
+    }
+
+    /**
+     * Buffered little endian writer of radio map files.
+     */
+    static class Writer implements Closeable {
+
+        private final FileOutputStream out;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long written;
+
+        Writer(File file, int type, int flags) throws IOException {
+            out = new FileOutputStream(file);
+            channel = out.getChannel();
+            buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            putBytes(MAGIC, MAGIC.length);
+            putInt(VERSION);
+            putInt(type);
+            putInt(flags);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+            written += 4;
+        }
+
+        void putFloats(float[] values, int n) throws IOException {
+            for(int i = 0; i < n; i++) {
+                ensure(4);
+                buffer.putFloat(values[i]);
+            }
+            written += 4L * n;
+        }
+
+        void putInts(int[] values, int n) throws IOException {
+            for(int i = 0; i < n; i++)
+                putInt(values[i]);
+        }
+
+        /**
+         * Writes the bytes, then pads to the next multiple of 4.
+         */
+        void putBytes(byte[] values, int n) throws IOException {
+            for(int i = 0; i < n; i++) {
+                ensure(1);
+                buffer.put(values[i]);
+            }
+            written += n;
+            while((written & 3) != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+                written++;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if(buffer.remaining() < bytes)
+                flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+/**
+ * Uniform grid over the positions of a fingerprint map's rows.
+ * Rows of cell c are cellRows[cellStarts[c] .. cellStarts[c+1]), in ascending order.
+ * The grid is immutable and can be read by many threads at once.
+ */
+class SpatialGrid {
+
+    // Average number of rows per cell
+    private static final int ROWS_PER_CELL = 8;
+
+    private final float minX, minY;
+    private final float cellSize;
+    private final int columns, rowsNumber;
+
+    private final int[] cellStarts;
+    private final int[] cellRows;
+
+    /**
+     * Builds the grid over the first n (x,y) points.
+     */
+    SpatialGrid(float[] x, float[] y, int n) {
+        // Bounds
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for(int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        if(n == 0) {
+            minX = minY = maxX = maxY = 0.f;
+        }
+        this.minX = minX;
+        this.minY = minY;
+
+        // Square cells holding ROWS_PER_CELL rows on average
+        float width = Math.max(maxX - minX, 1e-3f);
+        float height = Math.max(maxY - minY, 1e-3f);
+        float cellSize = (float) Math.sqrt(width * height * ROWS_PER_CELL / Math.max(n, 1));
+        cellSize = Math.max(cellSize, Math.max(width, height) / 4096.f);
+        this.cellSize = cellSize;
+        this.columns = (int) (width / cellSize) + 1;
+        this.rowsNumber = (int) (height / cellSize) + 1;
+
+        // Counting sort of rows by cell
+        int cells = columns * rowsNumber;
+        cellStarts = new int[cells + 1];
+        int[] cellOf = new int[n];
+        for(int i = 0; i < n; i++) {
+            cellOf[i] = cellIndex(column(x[i]), row(y[i]));
+            cellStarts[cellOf[i] + 1]++;
+        }
+        for(int c = 0; c < cells; c++)
+            cellStarts[c + 1] += cellStarts[c];
+        cellRows = new int[n];
+        int[] next = new int[cells];
+        System.arraycopy(cellStarts, 0, next, 0, cells);
+        for(int i = 0; i < n; i++)
+            cellRows[next[cellOf[i]]++] = i;
+    }
+
+    int column(float x) {
+        return clamp((int) Math.floor((x - minX) / cellSize), columns);
+    }
+
+    int row(float y) {
+        return clamp((int) Math.floor((y - minY) / cellSize), rowsNumber);
+    }
+
+    boolean isCell(int column, int row) {
+        return column >= 0 && column < columns && row >= 0 && row < rowsNumber;
+    }
+
+    int cellIndex(int column, int row) {
+        return row * columns + column;
+    }
+
+    int getCellStart(int cell) {
+        return cellStarts[cell];
+    }
+
+    int getCellEnd(int cell) {
+        return cellStarts[cell + 1];
+    }
+
+    int getRow(int i) {
+        return cellRows[i];
+    }
+
+    private static int clamp(int i, int n) {
+        return (i < 0 ? 0 : (i >= n ? n - 1 : i));
+    }
+}
@@ -0,0 +1,468 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.BssidDictionary;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.EncodedAccessPoints;
+import it.cnr.isti.wnlab.indoornavigation.utils.io.CsvTokenizer;
+
+/**
+ * FingerprintMap subtype for Wifi Fingerprints.
+ * <p>
+ * BSSIDs are turned into dense int ids by a dictionary owned by the map. Every row is stored as
+ * a slice of two shared arrays: ids sorted ascending and their RSSIs.
+ * <p>
+ * An inverted index (BSSID id -> rows containing it) lets K-NN score only the rows that share
+ * at least one AP with the scan. Every other row is at distance (scanSize + rowSize) *
+ * MAX_ROW_DISTANCE, so those rows are visited by ascending size only while they can still enter
+ * the result.
+ */
+public class WifiFingerprintMap extends FingerprintMap<XYPosition,AccessPoints> {
+
+    public static final int AP_ORDER_IN_ROW = AccessPoints.ORDER_BY_BSSID_ASC;
+    public static final float MIN_RSSI_VALUE = -100.f;
+    public static final float MAX_ROW_DISTANCE = MIN_RSSI_VALUE * MIN_RSSI_VALUE;
+
+    private final BssidDictionary dictionary;
+
+    // Position of every row
+    private final ArrayList<XYPosition> rowPositions;
+
+    // Row i is made of the APs in [rowStarts[i], rowStarts[i+1])
+    private int[] rowStarts;
+    private int[] apIds;
+    private byte[] apRssis;
+    private int apCount;
+
+    // Inverted index: rows containing id i are postingRows[postingStarts[i] .. postingStarts[i+1])
+    private int[] postingStarts;
+    private int[] postingRows;
+    private byte[] postingRssis;
+
+    // Rows sorted by (number of APs, row)
+    private int[] rowsBySize;
+
+    // Scoring buffers, one set per querying thread
+    private final ThreadLocal<ScoreBuffers> scoreBuffers = new ThreadLocal<ScoreBuffers>() {
+        @Override
+        protected ScoreBuffers initialValue() {
+            return new ScoreBuffers(size());
+        }
+    };
+
+    private WifiFingerprintMap() {
+        dictionary = new BssidDictionary();
+        rowPositions = new ArrayList<>();
+        rowStarts = new int[16];
+        apIds = new int[64];
+        apRssis = new byte[64];
+    }
+
+    /**
+     * @return The dictionary of the BSSIDs in this map. Use it for encoding scans (see
+     * AccessPoints.encode) before they reach the map.
+     */
+    public BssidDictionary getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public int size() {
+        return rowPositions.size();
+    }
+
+    @Override
+    protected XYPosition getPosition(int row) {
+        return rowPositions.get(row);
+    }
+
+    /**
+     * Adds a row. Pairs are (id,rssi) packed by EncodedAccessPoints.pack.
+     */
+    private void addRow(XYPosition position, long[] pairs, int n) {
+        // Sort by id; a repeated BSSID is kept once with its strongest RSSI, as in scans
+        Arrays.sort(pairs, 0, n);
+        n = EncodedAccessPoints.removeDuplicateIds(pairs, n);
+
+        // Make room
+        int row = rowPositions.size();
+        if(row + 2 > rowStarts.length)
+            rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+        if(apCount + n > apIds.length) {
+            int capacity = Math.max(apIds.length * 2, apCount + n);
+            apIds = Arrays.copyOf(apIds, capacity);
+            apRssis = Arrays.copyOf(apRssis, capacity);
+        }
+
+        // Append
+        for(int i = 0; i < n; i++) {
+            apIds[apCount] = EncodedAccessPoints.unpackId(pairs[i]);
+            apRssis[apCount] = EncodedAccessPoints.unpackRssi(pairs[i]);
+            apCount++;
+        }
+        rowStarts[row + 1] = apCount;
+        rowPositions.add(position);
+    }
+
+    /**
+     * Releases the unused capacity of the arrays.
+     */
+    private void trim() {
+        rowStarts = Arrays.copyOf(rowStarts, rowPositions.size() + 1);
+        apIds = Arrays.copyOf(apIds, apCount);
+        apRssis = Arrays.copyOf(apRssis, apCount);
+    }
+
+    /**
+     * Builds the inverted index and the rows order by size.
+     */
+    private void buildIndex() {
+        int rows = size();
+        int ids = dictionary.size();
+
+        // Count postings per id, then turn counts into offsets
+        postingStarts = new int[ids + 1];
+        for(int i = 0; i < apCount; i++)
+            postingStarts[apIds[i] + 1]++;
+        for(int id = 0; id < ids; id++)
+            postingStarts[id + 1] += postingStarts[id];
+
+        // Fill postings, rows ascending
+        postingRows = new int[apCount];
+        postingRssis = new byte[apCount];
+        int[] next = Arrays.copyOf(postingStarts, ids);
+        for(int row = 0; row < rows; row++) {
+            for(int i = rowStarts[row]; i < rowStarts[row + 1]; i++) {
+                int p = next[apIds[i]]++;
+                postingRows[p] = row;
+                postingRssis[p] = apRssis[i];
+            }
+        }
+
+        // Counting sort of rows by size (stable, so rows of the same size stay ascending)
+        int maxSize = 0;
+        for(int row = 0; row < rows; row++)
+            maxSize = Math.max(maxSize, rowSize(row));
+        int[] sizeStarts = new int[maxSize + 2];
+        for(int row = 0; row < rows; row++)
+            sizeStarts[rowSize(row) + 1]++;
+        for(int size = 0; size <= maxSize; size++)
+            sizeStarts[size + 1] += sizeStarts[size];
+        rowsBySize = new int[rows];
+        for(int row = 0; row < rows; row++)
+            rowsBySize[sizeStarts[rowSize(row)]++] = row;
+    }
+
+    private int rowSize(int row) {
+        return rowStarts[row + 1] - rowStarts[row];
+    }
+
+    /**
+     * K-NN through the inverted index. The result is exactly the one of the full scan.
+     */
+    @Override
+    public List<PositionDistance<XYPosition>> findNearestK(
+            AccessPoints measurement,
+            int k,
+            PositionDistance.Filter filterPolicy,
+            Cancellation cancellation
+    ) {
+        if(postingStarts == null)
+            return super.findNearestK(measurement, k, filterPolicy, cancellation);
+
+        EncodedAccessPoints scan = measurement.encode(dictionary);
+        int scanSize = scan.size();
+        ScoreBuffers buffers = scoreBuffers.get();
+        int[] common = buffers.common;
+        float[] sums = buffers.sums;
+        int[] touched = buffers.touched;
+        int touchedCount = 0;
+
+        // Accumulate common APs and squared RSSI differences for the rows sharing some AP
+        int[] ids = scan.ids;
+        byte[] rssis = scan.rssis;
+        for(int j = 0; j < ids.length; j++) {
+            if(cancellation != null && cancellation.isCancelled())
+                return cancel(common, sums, touched, touchedCount);
+            int rssi = rssis[j];
+            for(int p = postingStarts[ids[j]]; p < postingStarts[ids[j] + 1]; p++) {
+                int row = postingRows[p];
+                if(common[row] == 0)
+                    touched[touchedCount++] = row;
+                common[row]++;
+                float drssi = rssi - postingRssis[p];
+                sums[row] += drssi*drssi;
+            }
+        }
+
+        NearestKSelector selector = getSelector(k);
+
+        // Score candidates
+        for(int t = 0; t < touchedCount; t++) {
+            if(cancellation != null && t % CANCELLATION_BLOCK == 0 && cancellation.isCancelled())
+                return cancel(common, sums, touched, touchedCount);
+            int row = touched[t];
+            int uncommon = scanSize + rowSize(row) - 2*common[row];
+            float distance = sums[row] + uncommon * MAX_ROW_DISTANCE;
+            if(selector.accepts(row, distance)
+                    && (filterPolicy == null || filterPolicy.isValid(getPosition(row), distance)))
+                selector.offer(row, distance);
+        }
+
+        // Rows without common APs come in ascending (distance,row) order: stop at the first one
+        // that can't enter the result.
+        for(int r = 0; r < rowsBySize.length; r++) {
+            if(cancellation != null && r % CANCELLATION_BLOCK == 0 && cancellation.isCancelled())
+                return cancel(common, sums, touched, touchedCount);
+            int row = rowsBySize[r];
+            if(common[row] != 0)
+                continue;
+            float distance = 0.f + (scanSize + rowSize(row)) * MAX_ROW_DISTANCE;
+            if(!selector.accepts(row, distance))
+                break;
+            if(filterPolicy == null || filterPolicy.isValid(getPosition(row), distance))
+                selector.offer(row, distance);
+        }
+
+        cleanBuffers(common, sums, touched, touchedCount);
+        return collectNearest(selector);
+    }
+
+    /**
+     * Cleans the score buffers for the next query.
+     */
+    private static void cleanBuffers(int[] common, float[] sums, int[] touched, int touchedCount) {
+        for(int t = 0; t < touchedCount; t++) {
+            common[touched[t]] = 0;
+            sums[touched[t]] = 0.f;
+        }
+    }
+
+    private static List<PositionDistance<XYPosition>> cancel(
+            int[] common, float[] sums, int[] touched, int touchedCount) {
+        cleanBuffers(common, sums, touched, touchedCount);
+        return null;
+    }
+
+    @Override
+    protected float distanceTo(AccessPoints measurement, int row) {
+        EncodedAccessPoints scan = measurement.encode(dictionary);
+        return distance(scan.ids, scan.rssis, 0, scan.ids.length, scan.unknownCount,
+                apIds, apRssis, rowStarts[row], rowStarts[row + 1]);
+    }
+
+    @Override
+    protected void computeDistances(AccessPoints measurement, float[] distances, int from, int to) {
+        // The encoding is cached by the scansion, so every block reuses it
+        EncodedAccessPoints scan = measurement.encode(dictionary);
+        int[] ids = scan.ids;
+        byte[] rssis = scan.rssis;
+        int unknown = scan.unknownCount;
+
+        for(int i = from; i < to; i++)
+            distances[i] = distance(ids, rssis, 0, ids.length, unknown,
+                    apIds, apRssis, rowStarts[i], rowStarts[i + 1]);
+    }
+
+    /**
+     * Distance between AP scansions computed as the difference between common APs' levels.
+     * Every AP that is in one scansion only adds MAX_ROW_DISTANCE.
+     * @param aps1
+     * @param aps2
+     * @return the distance between two AP scansions.
+     */
+    @Override
+    protected float distanceBetween(AccessPoints aps1, AccessPoints aps2) {
+        EncodedAccessPoints e1 = aps1.encode(dictionary);
+        EncodedAccessPoints e2 = aps2.encode(dictionary);
+        return distance(e1.ids, e1.rssis, 0, e1.ids.length, e1.unknownCount,
+                e2.ids, e2.rssis, 0, e2.ids.length) + e2.unknownCount * MAX_ROW_DISTANCE;
+    }
+
+    /**
+     * Merge-join of two id-sorted slices.
+     * @param unknown1 Number of APs of the first scansion that aren't in the slice.
+     * @return the distance between the two slices.
+     */
+    private static float distance(
+            int[] ids1, byte[] rssis1, int from1, int to1, int unknown1,
+            int[] ids2, byte[] rssis2, int from2, int to2
+    ) {
+        int i1 = from1;
+        int i2 = from2;
+        int common = 0;
+        float distance = 0.f;
+
+        // Compare arrays (Computer Science first year excercise)
+        while(i1 < to1 && i2 < to2) {
+            int id1 = ids1[i1];
+            int id2 = ids2[i2];
+            if(id1 == id2) {
+                // Same BSSID: calculate distance
+                float drssi = rssis1[i1] - rssis2[i2];
+                distance += drssi*drssi;
+                common++;
+                i1++;
+                i2++;
+            } else if(id1 < id2)
+                i1++;
+            else
+                i2++;
+        }
+
+        // Every AP that hasn't got a match
+        int uncommon = (to1 - from1) + unknown1 + (to2 - from2) - 2*common;
+        return distance + uncommon * MAX_ROW_DISTANCE;
+    }
+
+    /**
+     * Writes the map, with its index, in the binary format of RadioMapFormat.
+     * @param file
+     */
+    public void writeRadioMap(File file) throws IOException {
+        int rows = size();
+        int bssids = dictionary.size();
+        boolean indexed = (postingStarts != null);
+        int flags = (indexed ? RadioMapFormat.FLAG_INDEX : 0);
+        try(RadioMapFormat.Writer out =
+                    new RadioMapFormat.Writer(file, RadioMapFormat.TYPE_WIFI, flags)) {
+            out.putInt(rows);
+            out.putInt(bssids);
+            out.putInt(apCount);
+
+            // Dictionary, in id order
+            for(int id = 0; id < bssids; id++) {
+                byte[] bssid = dictionary.getBssid(id).getBytes(RadioMapFormat.UTF_8);
+                out.putInt(bssid.length);
+                out.putBytes(bssid, bssid.length);
+            }
+
+            // Positions
+            float[] x = new float[rows];
+            float[] y = new float[rows];
+            for(int row = 0; row < rows; row++) {
+                x[row] = getX(row);
+                y[row] = getY(row);
+            }
+            out.putFloats(x, rows);
+            out.putFloats(y, rows);
+
+            // Rows
+            out.putInts(rowStarts, rows + 1);
+            out.putInts(apIds, apCount);
+            out.putBytes(apRssis, apCount);
+
+            // Index
+            if(indexed) {
+                out.putInts(postingStarts, bssids + 1);
+                out.putInts(postingRows, apCount);
+                out.putBytes(postingRssis, apCount);
+                out.putInts(rowsBySize, rows);
+            }
+        }
+    }
+
+    /**
+     * Builder class for WifiFingerprintMap.
+     */
+    public static class Builder extends FingerprintMapBuilder<WifiFingerprintMap> {
+
+        public WifiFingerprintMap build(CsvTokenizer csv) throws IOException {
+            // Instantiate fingerprint object
+            WifiFingerprintMap fingerprint = new WifiFingerprintMap();
+            long[] pairs = new long[16];
+
+            // Parse the records: x,y,bssid1,rssi1,bssid2,rssi2,...
+            while(csv.nextRecord()) {
+                // Parse coordinate
+                XYPosition position = new XYPosition(csv.nextFloat(), csv.nextFloat());
+
+                // Encode (BSSID,RSSI) pairs, a BSSID without level is ignored
+                int n = 0;
+                while(csv.hasNextField()) {
+                    String bssid = csv.nextString();
+                    if(!csv.hasNextField())
+                        break;
+                    if(n == pairs.length)
+                        pairs = Arrays.copyOf(pairs, n * 2);
+                    int id = fingerprint.dictionary.add(bssid);
+                    pairs[n++] = EncodedAccessPoints.pack(id, csv.nextInt());
+                }
+
+                // Populate map
+                fingerprint.addRow(position, pairs, n);
+            }
+
+            // Return fingerprint instance
+            fingerprint.trim();
+            fingerprint.buildIndex();
+            return fingerprint;
+        }
+
+        public WifiFingerprintMap build(ByteBuffer buffer) throws IOException {
+            int flags = RadioMapFormat.readHeader(buffer, RadioMapFormat.TYPE_WIFI);
+            int rows = RadioMapFormat.getCount(buffer);
+            int bssids = RadioMapFormat.getCount(buffer);
+            int aps = RadioMapFormat.getCount(buffer);
+            WifiFingerprintMap fingerprint = new WifiFingerprintMap();
+
+            // Dictionary: ids are given in order of insertion
+            for(int id = 0; id < bssids; id++) {
+                byte[] bssid = RadioMapFormat.getBytes(buffer, RadioMapFormat.getCount(buffer));
+                if(fingerprint.dictionary.add(new String(bssid, RadioMapFormat.UTF_8)) != id)
+                    throw new IOException("Corrupted radio map: repeated BSSID");
+            }
+
+            // Positions
+            float[] x = RadioMapFormat.getFloats(buffer, rows);
+            float[] y = RadioMapFormat.getFloats(buffer, rows);
+            fingerprint.rowPositions.ensureCapacity(rows);
+            for(int row = 0; row < rows; row++)
+                fingerprint.rowPositions.add(new XYPosition(x[row], y[row]));
+
+            // Rows
+            fingerprint.rowStarts = RadioMapFormat.getInts(buffer, rows + 1);
+            RadioMapFormat.checkOffsets(fingerprint.rowStarts, aps);
+            fingerprint.apIds = RadioMapFormat.getInts(buffer, aps);
+            RadioMapFormat.checkIndices(fingerprint.apIds, bssids);
+            fingerprint.apRssis = RadioMapFormat.getBytes(buffer, aps);
+            fingerprint.apCount = aps;
+
+            // Index, built now if it isn't in the file
+            if((flags & RadioMapFormat.FLAG_INDEX) != 0) {
+                fingerprint.postingStarts = RadioMapFormat.getInts(buffer, bssids + 1);
+                RadioMapFormat.checkOffsets(fingerprint.postingStarts, aps);
+                fingerprint.postingRows = RadioMapFormat.getInts(buffer, aps);
+                RadioMapFormat.checkIndices(fingerprint.postingRows, rows);
+                fingerprint.postingRssis = RadioMapFormat.getBytes(buffer, aps);
+                fingerprint.rowsBySize = RadioMapFormat.getInts(buffer, rows);
+                RadioMapFormat.checkIndices(fingerprint.rowsBySize, rows);
+            } else
+                fingerprint.buildIndex();
+
+            return fingerprint;
+        }
+    }
+
+    /**
+     * Per-row accumulators of the inverted index scoring. They are all zero between queries.
+     */
+    private static class ScoreBuffers {
+        final int[] common;
+        final float[] sums;
+        final int[] touched;
+
+        ScoreBuffers(int rows) {
+            common = new int[rows];
+            sums = new float[rows];
+            touched = new int[rows];
+        }
+    }
+}
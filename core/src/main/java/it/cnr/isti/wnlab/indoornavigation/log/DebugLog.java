@@ -0,0 +1,53 @@
+package it.cnr.isti.wnlab.indoornavigation.log;
+
+/**
+ * Debug logging of the localization code, independent from the platform: messages go to the
+ * sink set by the application (i.e. Android's log), and nowhere by default.
+ * <p>
+ * Callers check isEnabled() before building a message, so that a disabled log costs a field
+ * read and nothing else:
+ * <pre>
+ * if(DebugLog.isEnabled())
+ *     DebugLog.d(TAG, "Position: " + x + "," + y);
+ * </pre>
+ */
+public final class DebugLog {
+
+    /**
+     * Where messages are written.
+     */
+    public interface Sink {
+        void d(String tag, String message);
+    }
+
+    // Set once at startup: not volatile, so that checks can be hoisted out of loops
+    private static Sink sink;
+
+    private DebugLog() {}
+
+    /**
+     * @param sink Receives the messages, or null to disable logging. Set it before localization
+     *             starts.
+     */
+    public static void setSink(Sink sink) {
+        DebugLog.sink = sink;
+    }
+
+    /**
+     * @return true if messages are written somewhere.
+     */
+    public static boolean isEnabled() {
+        return sink != null;
+    }
+
+    /**
+     * Writes a debug message, if enabled.
+     * @param tag
+     * @param message
+     */
+    public static void d(String tag, String message) {
+        Sink s = sink;
+        if(s != null)
+            s.d(tag, message);
+    }
+}
@@ -0,0 +1,175 @@
+package it.cnr.isti.wnlab.indoornavigation.map;
+
+import java.util.Arrays;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+
+/**
+ * Euclidean distance transform of an occupancy grid: for every cell, the nearest cell whose
+ * points are all valid (Felzenszwalb and Huttenlocher's algorithm, linear in the cells).
+ * Snapping a position to the floor is then a table lookup, however many rooms there are.
+ * Positions outside the grid are compared with the valid cells on the border of the valid area
+ * instead, as the nearest valid cell is one of them.
+ * The transform is immutable and can be shared by many threads and sessions.
+ */
+public class DistanceTransform {
+
+    private final OccupancyGrid grid;
+
+    // Index (row*columns + column) of the nearest valid cell, -1 if there is none
+    private final int[] nearest;
+
+    // Valid cells next to a non valid one or to the grid's edge
+    private final int[] borderCells;
+
+    public DistanceTransform(OccupancyGrid grid) {
+        this.grid = grid;
+        int columns = grid.getColumns();
+        int rows = grid.getRows();
+        nearest = new int[columns * rows];
+
+        // First pass, along columns: nearest valid row in the same column
+        int[] nearestRow = new int[columns * rows];
+        for(int c = 0; c < columns; c++) {
+            int last = -1;
+            for(int r = 0; r < rows; r++) {
+                if(grid.getCell(c, r) == RoomMap.INSIDE)
+                    last = r;
+                nearestRow[r * columns + c] = last;
+            }
+            int next = -1;
+            for(int r = rows - 1; r >= 0; r--) {
+                int cell = r * columns + c;
+                if(grid.getCell(c, r) == RoomMap.INSIDE)
+                    next = r;
+                int previous = nearestRow[cell];
+                if(next >= 0 && (previous < 0 || next - r < r - previous))
+                    nearestRow[cell] = next;
+            }
+        }
+
+        // Second pass, along rows: lower envelope of the parabolas (c-q)^2 + f(q), where f(q) is
+        // the squared distance from the column's nearest valid row
+        int[] vertices = new int[columns];
+        double[] boundaries = new double[columns + 1];
+        for(int r = 0; r < rows; r++) {
+            int base = r * columns;
+            int k = -1;
+            for(int q = 0; q < columns; q++) {
+                if(nearestRow[base + q] < 0)
+                    continue;
+                double fq = f(nearestRow, base, q, r);
+                double s = Double.NEGATIVE_INFINITY;
+                while(k >= 0) {
+                    int v = vertices[k];
+                    s = ((fq + (double) q * q) - (f(nearestRow, base, v, r) + (double) v * v)) / (2. * (q - v));
+                    if(s <= boundaries[k])
+                        k--;
+                    else
+                        break;
+                }
+                if(k < 0)
+                    s = Double.NEGATIVE_INFINITY;
+                k++;
+                vertices[k] = q;
+                boundaries[k] = s;
+                boundaries[k + 1] = Double.POSITIVE_INFINITY;
+            }
+
+            if(k < 0) {
+                // No valid cell reachable along this row's columns
+                for(int c = 0; c < columns; c++)
+                    nearest[base + c] = -1;
+                continue;
+            }
+            int j = 0;
+            for(int c = 0; c < columns; c++) {
+                while(boundaries[j + 1] < c)
+                    j++;
+                int v = vertices[j];
+                nearest[base + c] = nearestRow[base + v] * columns + v;
+            }
+        }
+
+        // Border of the valid area
+        int borders = 0;
+        int[] border = new int[16];
+        for(int r = 0; r < rows; r++) {
+            for(int c = 0; c < columns; c++) {
+                if(grid.getCell(c, r) != RoomMap.INSIDE)
+                    continue;
+                if(c == 0 || r == 0 || c == columns - 1 || r == rows - 1
+                        || grid.getCell(c - 1, r) != RoomMap.INSIDE
+                        || grid.getCell(c + 1, r) != RoomMap.INSIDE
+                        || grid.getCell(c, r - 1) != RoomMap.INSIDE
+                        || grid.getCell(c, r + 1) != RoomMap.INSIDE) {
+                    if(borders == border.length)
+                        border = Arrays.copyOf(border, borders * 2);
+                    border[borders++] = r * columns + c;
+                }
+            }
+        }
+        borderCells = Arrays.copyOf(border, borders);
+    }
+
+    private static double f(int[] nearestRow, int base, int q, int r) {
+        double d = r - nearestRow[base + q];
+        return d * d;
+    }
+
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * @return A valid position near (x,y): the nearest point of the valid cell nearest to the
+     * one of (x,y), that is at most a couple of cells farther than the nearest valid point. Rooms
+     * thinner than a few cells may have no valid cell, so points near them can be snapped farther
+     * away. (x,y) itself if the grid has no valid cell.
+     */
+    public XYPosition nearestValid(float x, float y) {
+        int columns = grid.getColumns();
+        float resolution = grid.getResolution();
+        int cell;
+        float fc = (x - grid.getOriginX()) / resolution;
+        float fr = (y - grid.getOriginY()) / resolution;
+        if(fc >= 0.f && fc < columns && fr >= 0.f && fr < grid.getRows())
+            cell = nearest[(int) fr * columns + (int) fc];
+        else
+            cell = nearestBorderCell(fc, fr);
+        if(cell < 0)
+            return new XYPosition(x, y);
+
+        // Clamp to the cell: the whole closed cell is valid, as it was classified enlarged
+        int column = cell % columns;
+        int row = cell / columns;
+        float minX = grid.getOriginX() + column * resolution;
+        float minY = grid.getOriginY() + row * resolution;
+        float maxX = grid.getOriginX() + (column + 1) * resolution;
+        float maxY = grid.getOriginY() + (row + 1) * resolution;
+        return new XYPosition(
+                Math.max(minX, Math.min(maxX, x)),
+                Math.max(minY, Math.min(maxY, y)));
+    }
+
+    /**
+     * @param fc Column of the position, as a real number.
+     * @param fr Row of the position, as a real number.
+     * @return The border cell whose center is nearest to the position, -1 if there is none.
+     */
+    private int nearestBorderCell(float fc, float fr) {
+        int columns = grid.getColumns();
+        int best = -1;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for(int cell : borderCells) {
+            float dc = (cell % columns) + .5f - fc;
+            float dr = (cell / columns) + .5f - fr;
+            float distance = dc * dc + dr * dr;
+            if(distance < bestDistance) {
+                bestDistance = distance;
+                best = cell;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,165 @@
+package it.cnr.isti.wnlab.indoornavigation.map;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+
+public abstract class FloorMap implements XYMap {
+
+    // Side of the occupancy grid's cells, in meters
+    public static final float DEFAULT_OCCUPANCY_RESOLUTION = 0.1f;
+
+    private int floor;
+    private Collection<RoomMap> rooms;
+
+    // Built on first use (null if the rooms can't be rasterised)
+    private float occupancyResolution = DEFAULT_OCCUPANCY_RESOLUTION;
+    private volatile OccupancyGrid occupancyGrid;
+    private volatile boolean occupancyGridBuilt;
+    private volatile DistanceTransform distanceTransform;
+
+    // Walls, derived from the rooms on first use unless set
+    private volatile WallMap wallMap;
+    private volatile boolean wallMapBuilt;
+
+    public FloorMap(int floor, RoomMap... rooms) {
+        this.floor = floor;
+        this.rooms = Arrays.asList(rooms);
+    }
+
+    public int getFloor() {
+        return floor;
+    }
+
+    /**
+     * @return The rooms of the floor.
+     */
+    public Collection<RoomMap> getRooms() {
+        return rooms;
+    }
+
+    /**
+     * Most positions are checked with a lookup in the occupancy grid, those near a room's
+     * boundary against the rooms.
+     */
+    @Override
+    public boolean isValid(float x, float y) {
+        OccupancyGrid grid = getOccupancyGrid();
+        if(grid != null) {
+            int cell = grid.classify(x, y);
+            if(cell != RoomMap.PARTIAL)
+                return cell == RoomMap.INSIDE;
+        }
+        return isValidInRooms(x, y);
+    }
+
+    /**
+     * A move is valid if it ends in a valid position without crossing walls.
+     * Without walls, or for moves starting outside every room (i.e. particles spread around an
+     * uncertain start), only the destination is checked, so those can still enter the floor.
+     * @return true if one can move from (x0,y0) to (x1,y1).
+     */
+    public boolean isValidMove(float x0, float y0, float x1, float y1) {
+        if(!isValid(x1, y1))
+            return false;
+        WallMap walls = getWallMap();
+        return walls == null || !isValid(x0, y0) || !walls.crosses(x0, y0, x1, y1);
+    }
+
+    /**
+     * @return true if (x,y) is in some room, checking all of them.
+     */
+    protected boolean isValidInRooms(float x, float y) {
+        for(RoomMap room : rooms) {
+            if(room.isValid(x,y))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The rasterised floor, or null if its rooms don't know their bounds.
+     */
+    public OccupancyGrid getOccupancyGrid() {
+        if(!occupancyGridBuilt) {
+            synchronized(this) {
+                if(!occupancyGridBuilt) {
+                    occupancyGrid = OccupancyGrid.build(rooms, occupancyResolution);
+                    occupancyGridBuilt = true;
+                }
+            }
+        }
+        return occupancyGrid;
+    }
+
+    /**
+     * @return The walls of the floor: those set with setWallMap, or else the outline of the
+     * rectangular rooms (see WallMap.fromRooms). null if there are none.
+     */
+    public WallMap getWallMap() {
+        if(!wallMapBuilt) {
+            synchronized(this) {
+                if(!wallMapBuilt) {
+                    wallMap = WallMap.fromRooms(rooms, WallMap.DEFAULT_CELL_SIZE);
+                    wallMapBuilt = true;
+                }
+            }
+        }
+        return wallMap;
+    }
+
+    /**
+     * @param walls The walls of the floor, i.e. the real ones instead of the rooms' outline.
+     */
+    public synchronized void setWallMap(WallMap walls) {
+        wallMap = walls;
+        wallMapBuilt = true;
+    }
+
+    /**
+     * @param resolution Side of the occupancy grid's cells, in meters. The grid is built again
+     *                   on next use.
+     */
+    public synchronized void setOccupancyResolution(float resolution) {
+        if(!(resolution > 0.f))
+            throw new IllegalArgumentException("resolution must be positive");
+        occupancyResolution = resolution;
+        occupancyGrid = null;
+        occupancyGridBuilt = false;
+        distanceTransform = null;
+    }
+
+    /**
+     * @return The distance transform of the occupancy grid, or null if there is no grid.
+     */
+    public DistanceTransform getDistanceTransform() {
+        DistanceTransform transform = distanceTransform;
+        if(transform == null) {
+            synchronized(this) {
+                transform = distanceTransform;
+                if(transform == null) {
+                    OccupancyGrid grid = getOccupancyGrid();
+                    if(grid == null)
+                        return null;
+                    transform = new DistanceTransform(grid);
+                    distanceTransform = transform;
+                }
+            }
+        }
+        return transform;
+    }
+
+    /**
+     * @return (x,y) if it is valid, otherwise a valid position near it (see DistanceTransform).
+     * Floors whose rooms can't be rasterised must override this.
+     */
+    public XYPosition nearestValid(float x, float y) {
+        if(!isValid(x, y)) {
+            DistanceTransform transform = getDistanceTransform();
+            if(transform != null)
+                return transform.nearestValid(x, y);
+        }
+        return new XYPosition(x, y);
+    }
+}
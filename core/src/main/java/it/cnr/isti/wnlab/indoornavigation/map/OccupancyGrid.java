@@ -0,0 +1,172 @@
+package it.cnr.isti.wnlab.indoornavigation.map;
+
+import java.util.Collection;
+
+/**
+ * Rasterisation of a floor's rooms into square cells, stored as two bitsets: cells whose
+ * points are all valid, and cells crossed by a room's boundary, whose points must be checked
+ * against the rooms one by one. All the other cells, and everything outside the grid, are
+ * invalid. The grid is immutable and can be read by many threads at once.
+ */
+public class OccupancyGrid {
+
+    // Upper bound of the cells of a grid
+    private static final int MAX_CELLS = 1 << 26;
+
+    private final float originX, originY;
+    private final float resolution;
+    private final double inverseResolution;
+    private final int columns, rows;
+
+    // Bit (row*columns + column) is set if the cell is all valid, or crossed by a boundary
+    private final long[] inside;
+    private final long[] partial;
+
+    private OccupancyGrid(float originX, float originY, float resolution, int columns, int rows) {
+        this.originX = originX;
+        this.originY = originY;
+        this.resolution = resolution;
+        this.inverseResolution = 1. / resolution;
+        this.columns = columns;
+        this.rows = rows;
+        int words = (int) (((long) columns * rows + 63) >>> 6);
+        this.inside = new long[words];
+        this.partial = new long[words];
+    }
+
+    /**
+     * @param rooms
+     * @param resolution Side of the cells, in meters.
+     * @return The grid of the rooms, or null if some room doesn't know its bounds or the grid
+     * would be too big.
+     */
+    public static OccupancyGrid build(Collection<RoomMap> rooms, float resolution) {
+        if(!(resolution > 0.f))
+            throw new IllegalArgumentException("resolution must be positive");
+
+        // Bounds of the floor
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for(RoomMap room : rooms) {
+            float[] bounds = room.getBounds();
+            if(bounds == null)
+                return null;
+            minX = Math.min(minX, bounds[0]);
+            minY = Math.min(minY, bounds[1]);
+            maxX = Math.max(maxX, bounds[2]);
+            maxY = Math.max(maxY, bounds[3]);
+        }
+        if(rooms.isEmpty())
+            return null;
+
+        long columns = (long) Math.ceil((maxX - minX) / resolution) + 1;
+        long rows = (long) Math.ceil((maxY - minY) / resolution) + 1;
+        if(columns * rows > MAX_CELLS)
+            return null;
+        OccupancyGrid grid = new OccupancyGrid(minX, minY, resolution, (int) columns, (int) rows);
+
+        // Classify the cells around every room. Cells are enlarged a little, so that rounding
+        // in cell lookups can't put a point in an INSIDE or OUTSIDE cell by mistake.
+        float margin = resolution * 1e-3f;
+        for(RoomMap room : rooms) {
+            float[] bounds = room.getBounds();
+            int c0 = Math.max(0, grid.column(bounds[0]) - 1);
+            int c1 = Math.min(grid.columns - 1, grid.column(bounds[2]) + 1);
+            int r0 = Math.max(0, grid.row(bounds[1]) - 1);
+            int r1 = Math.min(grid.rows - 1, grid.row(bounds[3]) + 1);
+            for(int r = r0; r <= r1; r++) {
+                float cellMinY = grid.originY + r * resolution - margin;
+                float cellMaxY = grid.originY + (r + 1) * resolution + margin;
+                for(int c = c0; c <= c1; c++) {
+                    float cellMinX = grid.originX + c * resolution - margin;
+                    float cellMaxX = grid.originX + (c + 1) * resolution + margin;
+                    int cell = r * grid.columns + c;
+                    switch(room.classify(cellMinX, cellMinY, cellMaxX, cellMaxY)) {
+                        case RoomMap.INSIDE:
+                            grid.inside[cell >>> 6] |= 1L << cell;
+                            break;
+                        case RoomMap.PARTIAL:
+                            grid.partial[cell >>> 6] |= 1L << cell;
+                            break;
+                    }
+                }
+            }
+        }
+
+        // A cell all inside a room doesn't need checks even if another room's boundary crosses it
+        for(int w = 0; w < grid.partial.length; w++)
+            grid.partial[w] &= ~grid.inside[w];
+
+        return grid;
+    }
+
+    /**
+     * @return RoomMap.INSIDE if (x,y) is valid, RoomMap.OUTSIDE if it isn't, RoomMap.PARTIAL
+     * if it is in a boundary cell and must be checked against the rooms.
+     */
+    public int classify(float x, float y) {
+        double fc = (x - originX) * inverseResolution;
+        double fr = (y - originY) * inverseResolution;
+        // Negated comparisons are false for NaN too
+        if(!(fc >= 0. && fc < columns && fr >= 0. && fr < rows))
+            return RoomMap.OUTSIDE;
+        int cell = (int) fr * columns + (int) fc;
+        long bit = 1L << cell;
+        if((inside[cell >>> 6] & bit) != 0)
+            return RoomMap.INSIDE;
+        if((partial[cell >>> 6] & bit) != 0)
+            return RoomMap.PARTIAL;
+        return RoomMap.OUTSIDE;
+    }
+
+    /**
+     * @return The classification of a cell, as in classify(x,y).
+     */
+    public int getCell(int column, int row) {
+        int cell = row * columns + column;
+        long bit = 1L << cell;
+        if((inside[cell >>> 6] & bit) != 0)
+            return RoomMap.INSIDE;
+        if((partial[cell >>> 6] & bit) != 0)
+            return RoomMap.PARTIAL;
+        return RoomMap.OUTSIDE;
+    }
+
+    /**
+     * @return The column of x, clamped to the grid.
+     */
+    public int column(float x) {
+        return clamp((int) Math.floor((x - originX) * inverseResolution), columns);
+    }
+
+    /**
+     * @return The row of y, clamped to the grid.
+     */
+    public int row(float y) {
+        return clamp((int) Math.floor((y - originY) * inverseResolution), rows);
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginY() {
+        return originY;
+    }
+
+    public float getResolution() {
+        return resolution;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    private static int clamp(int i, int n) {
+        return (i < 0 ? 0 : (i >= n ? n - 1 : i));
+    }
+}
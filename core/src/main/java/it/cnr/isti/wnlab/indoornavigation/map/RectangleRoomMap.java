@@ -0,0 +1,78 @@
+package it.cnr.isti.wnlab.indoornavigation.map;
+
+/**
+ * A rectangular-shaped room.
+ */
+public class RectangleRoomMap extends RoomMap {
+
+    private final float x;
+    private final float y;
+    private final float width;
+    private final float height;
+
+    // Right and upper bounds (excluded)
+    private final float maxX;
+    private final float maxY;
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public RectangleRoomMap(float x, float y, float width, float height) {
+        this(x, y, x + width, y + height, width, height);
+    }
+
+    private RectangleRoomMap(float x, float y, float maxX, float maxY, float width, float height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * @param minX Left bound (included).
+     * @param minY Bottom bound (included).
+     * @param maxX Right bound (excluded).
+     * @param maxY Upper bound (excluded).
+     * @return The room [minX,maxX)x[minY,maxY), with the bounds exactly as given.
+     */
+    public static RectangleRoomMap fromCorners(float minX, float minY, float maxX, float maxY) {
+        return new RectangleRoomMap(minX, minY, maxX, maxY, maxX - minX, maxY - minY);
+    }
+
+    @Override
+    public boolean isValid(float x, float y) {
+        return x >= this.x && x < maxX
+                && y >= this.y && y < maxY;
+
+    }
+
+    @Override
+    public float[] getBounds() {
+        return new float[] {x, y, maxX, maxY};
+    }
+
+    @Override
+    public int classify(float minX, float minY, float maxX, float maxY) {
+        if(maxX < this.x || minX >= this.maxX || maxY < this.y || minY >= this.maxY)
+            return OUTSIDE;
+        if(minX >= this.x && maxX < this.maxX && minY >= this.y && maxY < this.maxY)
+            return INSIDE;
+        return PARTIAL;
+    }
+
+}
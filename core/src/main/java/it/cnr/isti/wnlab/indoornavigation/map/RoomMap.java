@@ -0,0 +1,30 @@
+package it.cnr.isti.wnlab.indoornavigation.map;
+
+/**
+ * A room in an indoor building.
+ * Rooms that know their shape can describe it, so that the floor can be rasterised
+ * (see OccupancyGrid).
+ */
+public abstract class RoomMap implements XYMap {
+
+    // Classification of a rectangle against a room
+    public static final int OUTSIDE = 0;
+    public static final int INSIDE = 1;
+    public static final int PARTIAL = 2;
+
+    /**
+     * @return The bounding box {minX, minY, maxX, maxY} of the room, or null if unknown.
+     */
+    public float[] getBounds() {
+        return null;
+    }
+
+    /**
+     * Tells where the rectangle [minX,maxX]x[minY,maxY] is with respect to the room.
+     * If in doubt, PARTIAL: positions in the rectangle are then checked one by one.
+     * @return INSIDE if all of its points are valid, OUTSIDE if none is, PARTIAL otherwise.
+     */
+    public int classify(float minX, float minY, float maxX, float maxY) {
+        return PARTIAL;
+    }
+}
@@ -0,0 +1,374 @@
+package it.cnr.isti.wnlab.indoornavigation.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Wall segments of a floor, hashed into a uniform grid of square cells.
+ * <p>
+ * A move is checked only against the walls in the cells its segment goes through, visited in
+ * order with a DDA traversal (Amanatides and Woo), so its cost depends on its length and not on
+ * the number of walls. Walls are registered in the cells around them with a small margin, so
+ * that rounding in the traversal can't miss one. The map is immutable and can be read by many
+ * threads at once.
+ */
+public class WallMap {
+
+    public static final float DEFAULT_CELL_SIZE = 1.f;
+
+    // Upper bound of the cells of a grid
+    private static final int MAX_CELLS = 1 << 22;
+
+    // Walls as (x0,y0,x1,y1) quadruples
+    private final float[] walls;
+
+    private final float originX, originY;
+    private final float cellSize;
+    private final int columns, rows;
+
+    // Walls of cell c are cellWalls[cellStarts[c] .. cellStarts[c+1])
+    private final int[] cellStarts;
+    private final int[] cellWalls;
+
+    /**
+     * @param walls Segments as (x0,y0,x1,y1) quadruples.
+     * @param cellSize Side of the grid's cells, in meters.
+     */
+    public WallMap(float[] walls, float cellSize) {
+        if(walls.length % 4 != 0)
+            throw new IllegalArgumentException("Walls must be (x0,y0,x1,y1) quadruples");
+        this.walls = walls.clone();
+        int n = walls.length / 4;
+
+        // Bounds
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for(int i = 0; i < walls.length; i += 2) {
+            minX = Math.min(minX, walls[i]);
+            maxX = Math.max(maxX, walls[i]);
+            minY = Math.min(minY, walls[i + 1]);
+            maxY = Math.max(maxY, walls[i + 1]);
+        }
+        if(n == 0)
+            minX = minY = maxX = maxY = 0.f;
+
+        // Grow the cells if the grid would be too big
+        long c, r;
+        while(true) {
+            c = (long) Math.floor((maxX - minX) / cellSize) + 1;
+            r = (long) Math.floor((maxY - minY) / cellSize) + 1;
+            if(c * r <= MAX_CELLS)
+                break;
+            cellSize *= 2.f;
+        }
+        this.originX = minX;
+        this.originY = minY;
+        this.cellSize = cellSize;
+        this.columns = (int) c;
+        this.rows = (int) r;
+
+        // Count walls per cell, then fill (CSR)
+        float margin = cellSize * 1e-3f;
+        cellStarts = new int[columns * rows + 1];
+        for(int w = 0; w < n; w++) {
+            int[] range = cellRange(w, margin);
+            for(int cr = range[2]; cr <= range[3]; cr++)
+                for(int cc = range[0]; cc <= range[1]; cc++)
+                    cellStarts[cr * columns + cc + 1]++;
+        }
+        for(int i = 0; i < columns * rows; i++)
+            cellStarts[i + 1] += cellStarts[i];
+        cellWalls = new int[cellStarts[columns * rows]];
+        int[] fill = Arrays.copyOf(cellStarts, columns * rows);
+        for(int w = 0; w < n; w++) {
+            int[] range = cellRange(w, margin);
+            for(int cr = range[2]; cr <= range[3]; cr++)
+                for(int cc = range[0]; cc <= range[1]; cc++)
+                    cellWalls[fill[cr * columns + cc]++] = w;
+        }
+    }
+
+    /**
+     * The walls of a floor made of rooms: the parts of the rectangular rooms' sides that
+     * separate a room from the outside of every room. Sides shared by two rooms, or inside
+     * another room, are passages. Rooms of other shapes bring no walls, and open the walls they
+     * are beyond (checked at a wall's midpoint).
+     * <p>
+     * Every side is cut by the rooms just beyond it: their extents along the side are sorted and
+     * merged, and the gaps left are walls. This takes O(rooms^2) time and linear memory.
+     * @param rooms
+     * @param cellSize Side of the grid's cells, in meters.
+     * @return The walls, or null if no room is rectangular.
+     */
+    public static WallMap fromRooms(Collection<RoomMap> rooms, float cellSize) {
+        List<float[]> rectangles = new ArrayList<>();
+        List<RoomMap> others = new ArrayList<>();
+        for(RoomMap room : rooms) {
+            if(room instanceof RectangleRoomMap)
+                rectangles.add(room.getBounds());
+            else
+                others.add(room);
+        }
+        if(rectangles.isEmpty())
+            return null;
+
+        SideBuilder builder = new SideBuilder(rectangles, others);
+        for(float[] b : rectangles) {
+            // Bottom, top, left and right sides, with the outward direction
+            builder.addSide(b[0], b[2], b[1], -1, true);
+            builder.addSide(b[0], b[2], b[3], 1, true);
+            builder.addSide(b[1], b[3], b[0], -1, false);
+            builder.addSide(b[1], b[3], b[2], 1, false);
+        }
+        return new WallMap(builder.getWalls(), cellSize);
+    }
+
+    /**
+     * Finds the walls of rooms' sides, reusing its buffers from a side to the next.
+     */
+    private static class SideBuilder {
+
+        private static final float EPSILON = 1e-3f;
+
+        private final List<float[]> rectangles;
+        private final List<RoomMap> others;
+
+        // Extents of the rooms beyond the current side, along it
+        private final float[] starts;
+        private final float[] ends;
+
+        // Walls found so far, as (x0,y0,x1,y1) quadruples
+        private float[] walls;
+        private int size;
+
+        SideBuilder(List<float[]> rectangles, List<RoomMap> others) {
+            this.rectangles = rectangles;
+            this.others = others;
+            starts = new float[rectangles.size()];
+            ends = new float[rectangles.size()];
+            // Mostly a wall per side or less
+            walls = new float[rectangles.size() * 4 * 4];
+        }
+
+        /**
+         * Adds the pieces of a side that are walls.
+         * @param from Start of the side along its axis.
+         * @param to End of the side along its axis.
+         * @param at Coordinate of the side on the other axis.
+         * @param outward Direction of the outside of the room, on the other axis.
+         * @param horizontal true if the side is parallel to the x axis.
+         */
+        void addSide(float from, float to, float at, int outward, boolean horizontal) {
+            float beyond = at + outward * EPSILON;
+
+            // Rooms just beyond the side, clipped to it
+            int n = 0;
+            for(float[] r : rectangles) {
+                float min = (horizontal ? r[0] : r[1]);
+                float max = (horizontal ? r[2] : r[3]);
+                float acrossMin = (horizontal ? r[1] : r[0]);
+                float acrossMax = (horizontal ? r[3] : r[2]);
+                if(beyond < acrossMin || beyond >= acrossMax || max <= from || min >= to)
+                    continue;
+                starts[n] = Math.max(min, from);
+                ends[n] = Math.min(max, to);
+                n++;
+            }
+            Arrays.sort(starts, 0, n);
+            Arrays.sort(ends, 0, n);
+
+            // Sweep: the side is a wall where no extent covers it
+            float uncovered = from;
+            int depth = 0;
+            int s = 0, e = 0;
+            while(s < n || e < n) {
+                // Starts first on ties, so that touching extents merge
+                if(s < n && starts[s] <= ends[e]) {
+                    if(depth == 0 && starts[s] > uncovered)
+                        addWall(uncovered, starts[s], at, beyond, horizontal);
+                    depth++;
+                    s++;
+                } else {
+                    depth--;
+                    if(depth == 0)
+                        uncovered = Math.max(uncovered, ends[e]);
+                    e++;
+                }
+            }
+            if(uncovered < to)
+                addWall(uncovered, to, at, beyond, horizontal);
+        }
+
+        private void addWall(float from, float to, float at, float beyond, boolean horizontal) {
+            // Rooms of other shapes beyond the wall make it a passage
+            if(!others.isEmpty()) {
+                float middle = (from + to) / 2.f;
+                if(horizontal ? isValid(others, middle, beyond) : isValid(others, beyond, middle))
+                    return;
+            }
+
+            if(size + 4 > walls.length)
+                walls = Arrays.copyOf(walls, walls.length * 2);
+            if(horizontal) {
+                walls[size++] = from; walls[size++] = at; walls[size++] = to; walls[size++] = at;
+            } else {
+                walls[size++] = at; walls[size++] = from; walls[size++] = at; walls[size++] = to;
+            }
+        }
+
+        float[] getWalls() {
+            return Arrays.copyOf(walls, size);
+        }
+    }
+
+    private static boolean isValid(Collection<RoomMap> rooms, float x, float y) {
+        for(RoomMap room : rooms)
+            if(room.isValid(x, y))
+                return true;
+        return false;
+    }
+
+    /**
+     * @return The number of walls.
+     */
+    public int size() {
+        return walls.length / 4;
+    }
+
+    /**
+     * @return The walls as (x0,y0,x1,y1) quadruples.
+     */
+    float[] getWalls() {
+        return walls;
+    }
+
+    /**
+     * @return true if the segment from (x0,y0) to (x1,y1) crosses a wall. Touching a wall at an
+     * end, or moving along it, isn't crossing.
+     */
+    public boolean crosses(float x0, float y0, float x1, float y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+
+        // Clip the segment to the grid (Liang-Barsky)
+        double[] t = {0., 1.};
+        double minX = originX, minY = originY;
+        double maxX = originX + (double) columns * cellSize;
+        double maxY = originY + (double) rows * cellSize;
+        if(!clip(-dx, x0 - minX, t) || !clip(dx, maxX - x0, t)
+                || !clip(-dy, y0 - minY, t) || !clip(dy, maxY - y0, t))
+            return false;
+
+        double sx = x0 + t[0] * dx, sy = y0 + t[0] * dy;
+        double ex = x0 + t[1] * dx, ey = y0 + t[1] * dy;
+        int c = column(sx), r = row(sy);
+        int endC = column(ex), endR = row(ey);
+        int stepC = (dx > 0 ? 1 : (dx < 0 ? -1 : 0));
+        int stepR = (dy > 0 ? 1 : (dy < 0 ? -1 : 0));
+
+        // Parameter t of the next vertical and horizontal cell boundaries
+        double tDeltaX = (stepC != 0 ? cellSize / Math.abs(dx) : Double.POSITIVE_INFINITY);
+        double tDeltaY = (stepR != 0 ? cellSize / Math.abs(dy) : Double.POSITIVE_INFINITY);
+        double tMaxX = (stepC > 0 ? (originX + (c + 1) * (double) cellSize - x0) / dx :
+                (stepC < 0 ? (originX + c * (double) cellSize - x0) / dx : Double.POSITIVE_INFINITY));
+        double tMaxY = (stepR > 0 ? (originY + (r + 1) * (double) cellSize - y0) / dy :
+                (stepR < 0 ? (originY + r * (double) cellSize - y0) / dy : Double.POSITIVE_INFINITY));
+
+        int steps = Math.abs(endC - c) + Math.abs(endR - r) + 2;
+        while(true) {
+            if(crossesInCell(c, r, x0, y0, x1, y1))
+                return true;
+            if((c == endC && r == endR) || steps-- <= 0)
+                return false;
+            if(tMaxX < tMaxY) {
+                c += stepC;
+                tMaxX += tDeltaX;
+            } else if(tMaxY < tMaxX) {
+                r += stepR;
+                tMaxY += tDeltaY;
+            } else {
+                // Through a corner: the side cells are touched too
+                if(crossesInCell(c + stepC, r, x0, y0, x1, y1) || crossesInCell(c, r + stepR, x0, y0, x1, y1))
+                    return true;
+                c += stepC;
+                r += stepR;
+                tMaxX += tDeltaX;
+                tMaxY += tDeltaY;
+            }
+            if(c < 0 || r < 0 || c >= columns || r >= rows)
+                return false;
+        }
+    }
+
+    private boolean crossesInCell(int c, int r, float x0, float y0, float x1, float y1) {
+        if(c < 0 || r < 0 || c >= columns || r >= rows)
+            return false;
+        int cell = r * columns + c;
+        for(int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+            int w = 4 * cellWalls[i];
+            if(properlyIntersect(x0, y0, x1, y1, walls[w], walls[w + 1], walls[w + 2], walls[w + 3]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the segments cross at a point inside both of them.
+     */
+    private static boolean properlyIntersect(
+            double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+        double o1 = orientation(ax, ay, bx, by, cx, cy);
+        double o2 = orientation(ax, ay, bx, by, dx, dy);
+        double o3 = orientation(cx, cy, dx, dy, ax, ay);
+        double o4 = orientation(cx, cy, dx, dy, bx, by);
+        return o1 * o2 < 0. && o3 * o4 < 0.;
+    }
+
+    private static double orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    /**
+     * One side of Liang-Barsky clipping: p*t <= q.
+     */
+    private static boolean clip(double p, double q, double[] t) {
+        if(p == 0.)
+            return q >= 0.;
+        double s = q / p;
+        if(p < 0.) {
+            if(s > t[1])
+                return false;
+            if(s > t[0])
+                t[0] = s;
+        } else {
+            if(s < t[0])
+                return false;
+            if(s < t[1])
+                t[1] = s;
+        }
+        return true;
+    }
+
+    /**
+     * @return {first column, last column, first row, last row} of the cells around a wall.
+     */
+    private int[] cellRange(int w, float margin) {
+        float x0 = walls[4 * w], y0 = walls[4 * w + 1], x1 = walls[4 * w + 2], y1 = walls[4 * w + 3];
+        return new int[] {
+                column(Math.min(x0, x1) - margin), column(Math.max(x0, x1) + margin),
+                row(Math.min(y0, y1) - margin), row(Math.max(y0, y1) + margin)
+        };
+    }
+
+    private int column(double x) {
+        int c = (int) Math.floor((x - originX) / cellSize);
+        return (c < 0 ? 0 : (c >= columns ? columns - 1 : c));
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor((y - originY) / cellSize);
+        return (r < 0 ? 0 : (r >= rows ? rows - 1 : r));
+    }
+}
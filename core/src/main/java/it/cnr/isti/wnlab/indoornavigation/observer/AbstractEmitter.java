@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import it.cnr.isti.wnlab.indoornavigation.log.DebugLog;
+
 /**
  * Common code for all emitters.
  * @param <T> Emitted data type.
@@ -45,7 +47,8 @@ public abstract class AbstractEmitter<T> implements Emitter<T> {
 
     private void checkStart(boolean wasEmpty) {
         if(wasEmpty && !mObservers.isEmpty()) {
-            System.out.println(this.getClass().getCanonicalName().toString() + " is starting");
+            if(DebugLog.isEnabled())
+                DebugLog.d("Emitter", this.getClass().getCanonicalName() + " is starting");
             startEmission();
         }
     }
@@ -79,7 +82,8 @@ public abstract class AbstractEmitter<T> implements Emitter<T> {
 
     private void checkStop(boolean wasEmpty) {
         if(!wasEmpty && mObservers.isEmpty()) {
-            System.out.println(this.getClass().getCanonicalName().toString() + " is stopping");
+            if(DebugLog.isEnabled())
+                DebugLog.d("Emitter", this.getClass().getCanonicalName() + " is stopping");
             stopEmission();
         }
     }
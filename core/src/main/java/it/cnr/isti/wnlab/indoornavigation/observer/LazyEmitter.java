@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import it.cnr.isti.wnlab.indoornavigation.log.DebugLog;
+
 /**
  * Usual code common to all emitters (observers management, etc...) with a lazy policy.
  * <p>
@@ -83,7 +85,8 @@ public abstract class LazyEmitter<T> implements Emitter<T> {
 
     private void checkStop(boolean wasEmpty) {
         if(!wasEmpty && mObservers.isEmpty()) {
-            System.out.println(this.getClass().getCanonicalName().toString() + " is stopping");
+            if(DebugLog.isEnabled())
+                DebugLog.d("Emitter", this.getClass().getCanonicalName() + " is stopping");
             stopEmission();
         }
     }
@@ -27,6 +27,9 @@ public class AccessPoints implements RawData, Iterable<SingleAccessPoint>, Seria
     private final SingleAccessPoint[] mApArray;
     private final int mSize;
 
+    // Last dictionary-encoded form
+    private transient volatile EncodedAccessPoints mEncoded;
+
     public AccessPoints(List<SingleAccessPoint> accessPoints, long timestamp) {
         int size = accessPoints.size();
         mApArray = accessPoints.toArray(new SingleAccessPoint[size]);
@@ -34,6 +37,17 @@ public class AccessPoints implements RawData, Iterable<SingleAccessPoint>, Seria
         this.timestamp = timestamp;
     }
 
+    /**
+     * Builds the instance and encodes it with the dictionary right away.
+     * @param accessPoints
+     * @param timestamp
+     * @param dictionary
+     */
+    public AccessPoints(List<SingleAccessPoint> accessPoints, long timestamp, BssidDictionary dictionary) {
+        this(accessPoints, timestamp);
+        encode(dictionary);
+    }
+
     /**
      * @param p Element's index.
      * @return Requested element or null if it doesn't exists or the index is not valid.
@@ -59,6 +73,20 @@ public class AccessPoints implements RawData, Iterable<SingleAccessPoint>, Seria
         return mApArray;
     }
 
+    /**
+     * The encoded form is cached, so encoding again with the same dictionary is free.
+     * @param dictionary
+     * @return The (BSSID id, RSSI) representation of this scansion for the specified dictionary.
+     */
+    public EncodedAccessPoints encode(BssidDictionary dictionary) {
+        EncodedAccessPoints encoded = mEncoded;
+        if(encoded == null || encoded.dictionary != dictionary) {
+            encoded = EncodedAccessPoints.encode(mApArray, mSize, dictionary);
+            mEncoded = encoded;
+        }
+        return encoded;
+    }
+
     /**
      * @param order
      * @return A comparator instance for the specified order.
@@ -124,6 +152,11 @@ public class AccessPoints implements RawData, Iterable<SingleAccessPoint>, Seria
         public SingleAccessPoint next() {
             return mApArray[i++];
         }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Access points can't be removed from a scan");
+        }
     }
 
     @Override
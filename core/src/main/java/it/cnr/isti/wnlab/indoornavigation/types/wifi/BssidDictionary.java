@@ -0,0 +1,62 @@
+package it.cnr.isti.wnlab.indoornavigation.types.wifi;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Dictionary that maps every known BSSID to a dense integer id (0, 1, 2, ...).
+ * <p>
+ * Ids are added while a fingerprint map is loaded. After that the dictionary is only read, so it
+ * can be safely shared by the threads that encode scans.
+ */
+public class BssidDictionary implements Serializable {
+
+    public static final int UNKNOWN_ID = -1;
+
+    private final HashMap<String,Integer> mIds;
+    private final ArrayList<String> mBssids;
+
+    public BssidDictionary() {
+        mIds = new HashMap<>();
+        mBssids = new ArrayList<>();
+    }
+
+    /**
+     * @param bssid
+     * @return The id of the BSSID, that is created if it didn't exist.
+     */
+    public int add(String bssid) {
+        Integer id = mIds.get(bssid);
+        if(id == null) {
+            id = mBssids.size();
+            mIds.put(bssid, id);
+            mBssids.add(bssid);
+        }
+        return id;
+    }
+
+    /**
+     * @param bssid
+     * @return The id of the BSSID or UNKNOWN_ID if it isn't in the dictionary.
+     */
+    public int getId(String bssid) {
+        Integer id = mIds.get(bssid);
+        return (id != null ? id : UNKNOWN_ID);
+    }
+
+    /**
+     * @param id
+     * @return The BSSID with the specified id.
+     */
+    public String getBssid(int id) {
+        return mBssids.get(id);
+    }
+
+    /**
+     * @return Number of known BSSIDs.
+     */
+    public int size() {
+        return mBssids.size();
+    }
+}
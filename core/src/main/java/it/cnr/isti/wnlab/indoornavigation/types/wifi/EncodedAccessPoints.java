@@ -0,0 +1,103 @@
+package it.cnr.isti.wnlab.indoornavigation.types.wifi;
+
+import java.util.Arrays;
+
+/**
+ * Immutable dictionary-encoded form of an AP scansion: ids sorted ascending with their RSSIs.
+ * BSSIDs unknown to the dictionary can't match any fingerprint, so only their number is kept.
+ * A BSSID repeated in the scansion is taken once, with its strongest RSSI (fingerprint rows are
+ * encoded the same way).
+ */
+public class EncodedAccessPoints {
+
+    public final BssidDictionary dictionary;
+    public final int[] ids;
+    public final byte[] rssis;
+    public final int unknownCount;
+
+    private EncodedAccessPoints(BssidDictionary dictionary, int[] ids, byte[] rssis, int unknownCount) {
+        this.dictionary = dictionary;
+        this.ids = ids;
+        this.rssis = rssis;
+        this.unknownCount = unknownCount;
+    }
+
+    /**
+     * @return Number of distinct known APs plus the unknown ones.
+     */
+    public int size() {
+        return ids.length + unknownCount;
+    }
+
+    /**
+     * @param aps
+     * @param size Number of APs in the array to consider.
+     * @param dictionary
+     * @return The encoded form of the first size elements of aps.
+     */
+    public static EncodedAccessPoints encode(SingleAccessPoint[] aps, int size, BssidDictionary dictionary) {
+        // Pack (id,rssi) pairs in longs, so that a single sort orders them by id
+        long[] pairs = new long[size];
+        int known = 0;
+        for(int i = 0; i < size; i++) {
+            int id = dictionary.getId(aps[i].bssid);
+            if(id != BssidDictionary.UNKNOWN_ID)
+                pairs[known++] = pack(id, aps[i].rssi);
+        }
+        Arrays.sort(pairs, 0, known);
+
+        // A repeated BSSID can't match twice
+        int unique = removeDuplicateIds(pairs, known);
+
+        // Unpack
+        int[] ids = new int[unique];
+        byte[] rssis = new byte[unique];
+        for(int i = 0; i < unique; i++) {
+            ids[i] = unpackId(pairs[i]);
+            rssis[i] = unpackRssi(pairs[i]);
+        }
+
+        return new EncodedAccessPoints(dictionary, ids, rssis, size - known);
+    }
+
+    /**
+     * Keeps one pair per id, the one with the strongest RSSI.
+     * @param pairs Packed pairs sorted by id.
+     * @param n Number of pairs in the array.
+     * @return The number of remaining pairs, moved to the beginning of the array.
+     */
+    public static int removeDuplicateIds(long[] pairs, int n) {
+        int unique = 0;
+        for(int i = 0; i < n; i++) {
+            if(unique == 0 || unpackId(pairs[i]) != unpackId(pairs[unique - 1]))
+                pairs[unique++] = pairs[i];
+            // Packed RSSIs don't sort by signed value, so compare them unpacked
+            else if(unpackRssi(pairs[i]) > unpackRssi(pairs[unique - 1]))
+                pairs[unique - 1] = pairs[i];
+        }
+        return unique;
+    }
+
+    /**
+     * @param rssi
+     * @return The RSSI saturated in a byte (dBm values are always in range).
+     */
+    public static byte toByte(int rssi) {
+        return (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, rssi));
+    }
+
+    /**
+     * @return A long whose natural order is the order of ids.
+     */
+    public static long pack(int id, int rssi) {
+        return ((long) id << 32) | (toByte(rssi) & 0xFFFFFFFFL);
+    }
+
+    public static int unpackId(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    public static byte unpackRssi(long pair) {
+        return (byte) pair;
+    }
+}
@@ -0,0 +1,32 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.io;
+
+import java.io.IOException;
+
+/**
+ * Thrown by CsvTokenizer when a record can't be parsed as expected.
+ */
+public class CsvFormatException extends IOException {
+
+    private final int line;
+    private final int column;
+
+    public CsvFormatException(String message, int line, int column) {
+        super(message + " (line " + line + ", column " + column + ")");
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * @return The 1-based line of the malformed field.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return The 1-based column where the malformed field starts.
+     */
+    public int getColumn() {
+        return column;
+    }
+}
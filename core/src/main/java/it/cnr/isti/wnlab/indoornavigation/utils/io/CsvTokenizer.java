@@ -0,0 +1,333 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Streaming tokenizer for comma-separated records.
+ * <p>
+ * Characters are read in chunks into a buffer and numbers are parsed in place, so no String is
+ * made for a field unless nextString() is asked for it. Memory is constant, apart from fields
+ * longer than the buffer. Blank lines are skipped and no quoting is supported.
+ * <p>
+ * Usage:
+ * <pre>
+ * while(csv.nextRecord()) {
+ *     float x = csv.nextFloat();
+ *     while(csv.hasNextField())
+ *         ...
+ * }
+ * </pre>
+ */
+public class CsvTokenizer implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    // Significant digits that always fit a double's mantissa
+    private static final int MAX_FAST_DIGITS = 15;
+
+    // Powers of ten that are exact doubles
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader reader;
+    private char[] buffer;
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    // Offset in the stream of buffer[0]
+    private long base;
+
+    // Current line (1-based) and offset in the stream of its first character
+    private int line;
+    private long lineStart;
+
+    // Record state
+    private boolean inRecord;
+    private boolean recordEnded;
+
+    public CsvTokenizer(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvTokenizer(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[Math.max(bufferSize, 16)];
+        this.line = 1;
+    }
+
+    /**
+     * Moves to the next non-blank record, skipping the fields left in the current one.
+     * @return false if the stream is over.
+     */
+    public boolean nextRecord() throws IOException {
+        if(inRecord)
+            skipToLineEnd();
+
+        // Skip line terminators and blank lines
+        while(true) {
+            if(pos == limit && !fill()) {
+                inRecord = false;
+                return false;
+            }
+            char c = buffer[pos];
+            if(c == '\n') {
+                pos++;
+                line++;
+                lineStart = base + pos;
+            } else if(c == '\r')
+                pos++;
+            else
+                break;
+        }
+
+        inRecord = true;
+        recordEnded = false;
+        return true;
+    }
+
+    /**
+     * @return true if the current record has another field.
+     */
+    public boolean hasNextField() {
+        return inRecord && !recordEnded;
+    }
+
+    /**
+     * @return The next field of the current record.
+     */
+    public String nextString() throws IOException {
+        int end = locateField();
+        String value = new String(buffer, pos, end - pos);
+        consumeField(end);
+        return value;
+    }
+
+    /**
+     * Skips the next field of the current record.
+     */
+    public void skipField() throws IOException {
+        consumeField(locateField());
+    }
+
+    /**
+     * Compares the next field with a string, without consuming it.
+     * @param value
+     * @return true if the next field is equal to value.
+     */
+    public boolean fieldEquals(String value) throws IOException {
+        int end = locateField();
+        if(end - pos != value.length())
+            return false;
+        for(int i = pos; i < end; i++)
+            if(buffer[i] != value.charAt(i - pos))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return The next field parsed as a decimal int.
+     */
+    public int nextInt() throws IOException {
+        int end = locateField();
+        int i = pos;
+        boolean negative = false;
+        if(i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = (buffer[i] == '-');
+            i++;
+        }
+        if(i == end || end - i > 10)
+            throw error("Not an integer", end);
+
+        long value = 0;
+        for(; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if(digit < 0 || digit > 9)
+                throw error("Not an integer", end);
+            value = value * 10 + digit;
+        }
+        if(negative)
+            value = -value;
+        if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw error("Integer out of range", end);
+
+        consumeField(end);
+        return (int) value;
+    }
+
+    /**
+     * @return The next field parsed as a float, with the same result as Float.parseFloat.
+     */
+    public float nextFloat() throws IOException {
+        int end = locateField();
+        float value = parseFloat(pos, end);
+        consumeField(end);
+        return value;
+    }
+
+    /**
+     * @return The current line, 1-based.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Plain decimal numbers of up to 15 significant digits are parsed in place: the double
+     * nearest to the value is computed with a single rounding, then rounded to float. That
+     * gives the correctly rounded float unless the double falls exactly halfway between two
+     * floats. Everything else is left to Float.parseFloat.
+     */
+    private float parseFloat(int from, int end) throws CsvFormatException {
+        int i = from;
+        boolean negative = false;
+        if(i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = (buffer[i] == '-');
+            i++;
+        }
+
+        // Digits
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean digits = false;
+        for(; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+            digits = true;
+            mantissa = mantissa * 10 + (buffer[i] - '0');
+            if(mantissa != 0)
+                significant++;
+        }
+        if(i < end && buffer[i] == '.') {
+            for(i++; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+                digits = true;
+                mantissa = mantissa * 10 + (buffer[i] - '0');
+                if(mantissa != 0)
+                    significant++;
+                exponent--;
+            }
+        }
+
+        // Exponent
+        if(digits && i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if(i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+                negativeExponent = (buffer[i] == '-');
+                i++;
+            }
+            int e = 0;
+            boolean exponentDigits = false;
+            for(; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+                exponentDigits = true;
+                e = Math.min(e * 10 + (buffer[i] - '0'), 1000);
+            }
+            if(!exponentDigits)
+                digits = false;
+            exponent += (negativeExponent ? -e : e);
+        }
+
+        if(digits && i == end && significant <= MAX_FAST_DIGITS) {
+            if(mantissa == 0)
+                return (negative ? -0.f : 0.f);
+            if(exponent >= -22 && exponent <= 22) {
+                double d = (exponent >= 0 ?
+                        mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent]);
+                long bits = Double.doubleToRawLongBits(d);
+                if(d >= Float.MIN_NORMAL && (bits & 0x1FFFFFFFL) != 0x10000000L)
+                    return (negative ? -(float) d : (float) d);
+            }
+        }
+
+        // Slow path
+        try {
+            return Float.parseFloat(new String(buffer, from, end - from));
+        } catch (NumberFormatException e) {
+            throw error("Not a number", end);
+        }
+    }
+
+    /**
+     * Makes sure the next field is entirely in the buffer, starting at pos.
+     * @return The end (exclusive) of the field.
+     */
+    private int locateField() throws IOException {
+        if(!hasNextField())
+            throw new CsvFormatException("Missing field", line, column());
+
+        int i = pos;
+        while(true) {
+            if(i == limit) {
+                int offset = i - pos;
+                if(!fill())
+                    return limit;
+                i = pos + offset;
+                continue;
+            }
+            char c = buffer[i];
+            if(c == ',' || c == '\n' || c == '\r')
+                return i;
+            i++;
+        }
+    }
+
+    private void consumeField(int end) {
+        pos = end;
+        if(pos < limit && buffer[pos] == ',')
+            pos++;
+        else
+            recordEnded = true;
+    }
+
+    private void skipToLineEnd() throws IOException {
+        while(true) {
+            if(pos == limit && !fill())
+                return;
+            if(buffer[pos] == '\n')
+                return;
+            pos++;
+        }
+    }
+
+    /**
+     * Reads more characters, keeping the unread ones at the beginning of the buffer.
+     * @return false if the stream is over.
+     */
+    private boolean fill() throws IOException {
+        if(eof)
+            return false;
+        if(pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            base += pos;
+            limit -= pos;
+            pos = 0;
+        }
+        if(limit == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        int n = reader.read(buffer, limit, buffer.length - limit);
+        if(n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private int column() {
+        return (int) (base + pos - lineStart) + 1;
+    }
+
+    private CsvFormatException error(String message, int end) {
+        return new CsvFormatException(
+                message + ": \"" + new String(buffer, pos, end - pos) + "\"", line, column());
+    }
+}
@@ -0,0 +1,161 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.localization.histogramfilter;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import it.cnr.isti.wnlab.indoornavigation.AbstractIndoorLocalizationStrategy;
+import it.cnr.isti.wnlab.indoornavigation.IndoorPosition;
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.filters.histogramfilter.HistogramFilter;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.DistancesMap;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.LikelihoodField;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.PositionDistance;
+import it.cnr.isti.wnlab.indoornavigation.log.DebugLog;
+import it.cnr.isti.wnlab.indoornavigation.map.FloorMap;
+import it.cnr.isti.wnlab.indoornavigation.map.OccupancyGrid;
+import it.cnr.isti.wnlab.indoornavigation.observer.Observer;
+import it.cnr.isti.wnlab.indoornavigation.pdr.PDR;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+
+/**
+ * A localization strategy that uses a histogram filter over the rasterised floor.
+ * Every PDR step moves the probability, and every new Wifi or magnetic K-NN result weights it
+ * with the same likelihood as the particle filter's. Unlike the particle filter, the cost of a
+ * step only depends on the size of the grid.
+ */
+public class HistogramFilterStrategy
+        extends AbstractIndoorLocalizationStrategy
+        implements Observer<PDR.Result> {
+
+    // Lower bound of a fingerprint's likelihood, so that no cell's probability drops to zero
+    private final static float MIN_FINGERPRINT_LIKELIHOOD = 1e-3f;
+
+    // Histogram filter
+    private HistogramFilter histogramFilter;
+    private final float motionStandardDeviation;
+
+    // Map
+    private FloorMap floorMap;
+
+    // PDR
+    private PDR pdr;
+
+    // Fingerprints, with the last results used to correct
+    private DistancesMap<XYPosition,AccessPoints> wifiDistances;
+    private List<PositionDistance<XYPosition>> lastWifiDistances;
+    private DistancesMap<XYPosition,MagneticField> magneticDistances;
+    private List<PositionDistance<XYPosition>> lastMagneticDistances;
+
+    /**
+     * @param initialPosition
+     * @param floorMap The floor, which must have an occupancy grid.
+     * @param cellSize Side of the filter's cells, in meters.
+     * @param motionStandardDeviation Uncertainty of a step along each axis, in meters.
+     * @param pdr
+     * @param wifiDist
+     * @param magDist
+     */
+    public HistogramFilterStrategy(
+            XYPosition initialPosition,
+            FloorMap floorMap,
+            float cellSize,
+            float motionStandardDeviation,
+            PDR pdr,
+            DistancesMap<XYPosition, AccessPoints> wifiDist,
+            DistancesMap<XYPosition, MagneticField> magDist
+    ) {
+        OccupancyGrid grid = floorMap.getOccupancyGrid();
+        if(grid == null)
+            throw new IllegalArgumentException("The floor map can't be rasterised");
+        float width = grid.getColumns() * grid.getResolution();
+        float height = grid.getRows() * grid.getResolution();
+        this.histogramFilter = new HistogramFilter(
+                floorMap,
+                grid.getOriginX(), grid.getOriginY(),
+                cellSize,
+                (int) Math.ceil(width / cellSize),
+                (int) Math.ceil(height / cellSize),
+                initialPosition);
+        this.motionStandardDeviation = motionStandardDeviation;
+        this.floorMap = floorMap;
+        this.pdr = pdr;
+        this.wifiDistances = wifiDist;
+        this.magneticDistances = magDist;
+    }
+
+    /**
+     * Processes bands of rows in parallel when the grid has at least threshold cells.
+     * @param executor null for sequential mode.
+     * @param threshold
+     */
+    public void setExecutor(ExecutorService executor, int threshold) {
+        histogramFilter.setExecutor(executor, threshold);
+    }
+
+    /**
+     * @return The mean of the probability, snapped to the floor.
+     */
+    @Override
+    public IndoorPosition getCurrentPosition() {
+        XYPosition mean = histogramFilter.get2DPosition();
+        return new IndoorPosition(floorMap.nearestValid(mean.x, mean.y),floorMap.getFloor(),System.currentTimeMillis());
+    }
+
+    /**
+     * Weights the probability with a new K-NN result. The likelihood is interpolated by the
+     * filter's bands of rows, in the cells with some probability only.
+     * @param distances
+     */
+    private void correct(final List<PositionDistance<XYPosition>> distances) {
+        float limit = 0.f;
+        for(int i = 0; i < distances.size(); i++)
+            limit = Math.max(limit, distances.get(i).distance);
+        if(limit <= 0.f)
+            return;
+
+        final float maxLimit = limit;
+        histogramFilter.correct(new HistogramFilter.Likelihood() {
+            @Override
+            public float getLikelihood(float x, float y) {
+                float survival = 1.f - LikelihoodField.interpolateDistance(x, y, distances) / maxLimit;
+                return Math.max(MIN_FINGERPRINT_LIKELIHOOD, survival);
+            }
+        });
+    }
+
+    @Override
+    protected void startEmission() {
+        pdr.register(this);
+    }
+
+    @Override
+    protected void stopEmission() {
+        pdr.unregister(this);
+    }
+
+    @Override
+    public void notify(PDR.Result data) {
+        // Motion update. If no valid cell can be reached, start again from the dead reckoning.
+        if(!histogramFilter.predict(data.dE, data.dN, motionStandardDeviation)) {
+            XYPosition last = histogramFilter.get2DPosition();
+            if(DebugLog.isEnabled())
+                DebugLog.d("HF", "No valid cell reached: restarting from " + last);
+            histogramFilter.reset(floorMap.nearestValid(last.x + data.dE, last.y + data.dN));
+        }
+
+        // Measurement updates, once per K-NN result
+        List<PositionDistance<XYPosition>> wifi = wifiDistances.getDistances();
+        if(wifi != null && wifi != lastWifiDistances) {
+            lastWifiDistances = wifi;
+            correct(wifi);
+        }
+        List<PositionDistance<XYPosition>> magnetic = magneticDistances.getDistances();
+        if(magnetic != null && magnetic != lastMagneticDistances) {
+            lastMagneticDistances = magnetic;
+            correct(magnetic);
+        }
+
+        notifyObservers(getCurrentPosition());
+    }
+}
@@ -1,21 +1,19 @@
 package it.cnr.isti.wnlab.indoornavigation.utils.localization.kalmanfilter;
 
-import android.util.Log;
-
-import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import it.cnr.isti.wnlab.indoornavigation.IndoorPosition;
 import it.cnr.isti.wnlab.indoornavigation.AbstractIndoorLocalizationStrategy;
 import it.cnr.isti.wnlab.indoornavigation.XYPosition;
 import it.cnr.isti.wnlab.indoornavigation.filters.kalmanfilter.KalmanFilter;
+import it.cnr.isti.wnlab.indoornavigation.log.DebugLog;
 import it.cnr.isti.wnlab.indoornavigation.map.FloorMap;
 import it.cnr.isti.wnlab.indoornavigation.observer.Observer;
 import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
 import it.cnr.isti.wnlab.indoornavigation.fingerprint.PositionDistance;
 import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
 import it.cnr.isti.wnlab.indoornavigation.fingerprint.DistancesMap;
-import it.cnr.isti.wnlab.indoornavigation.utils.math.GeometryUtils;
 import it.cnr.isti.wnlab.indoornavigation.pdr.PDR;
 
 /**
@@ -82,14 +80,16 @@ public class KalmanFilterStrategy
         // Position with PDR
         float newX = position.x + pdrData.dE;
         float newY = position.y + pdrData.dN;
-        Log.d("KFS", "PDR is " + pdrData);
-
-        Log.d("KFS", "PDR position is: " + newX + "," + newY);
+        if(DebugLog.isEnabled()) {
+            DebugLog.d("KFS", "PDR is " + pdrData);
+            DebugLog.d("KFS", "PDR position is: " + newX + "," + newY);
+        }
 
         // Correct PDR error with Wifi positioning, if possible
         XYPosition fingerprintPosition = getFingerprintPosition();
 
-        Log.d("KFS", "Fingerprint position is: " + fingerprintPosition);
+        if(DebugLog.isEnabled())
+            DebugLog.d("KFS", "Fingerprint position is: " + fingerprintPosition);
 
         if(fingerprintPosition != null) {
             // Prediction step (useless for now)
@@ -113,17 +113,19 @@ public class KalmanFilterStrategy
             float errorX = r.nextFloat() * kfState[0];
             float errorY = r.nextFloat() * kfState[1];
 
-            Log.d("KFS", "Errors: " + errorX + "," + errorY);
+            if(DebugLog.isEnabled())
+                DebugLog.d("KFS", "Errors: " + errorX + "," + errorY);
 
             // Try correction with Kalman Filtered error
             newX -= errorX;
             newY -= errorY;
         }
 
-        Log.d("KFS", "New position: (" + newX + "," + newY + ") -> " + floor.nearestValid(newX,newY));
-
         // Choose which is the position to emit
-        return floor.nearestValid(newX, newY);
+        XYPosition validPosition = floor.nearestValid(newX, newY);
+        if(DebugLog.isEnabled())
+            DebugLog.d("KFS", "New position: (" + newX + "," + newY + ") -> " + validPosition);
+        return validPosition;
     }
 
     private XYPosition getFingerprintPosition() {
@@ -137,12 +139,8 @@ public class KalmanFilterStrategy
 //            Log.d("KFS", "WifiPosition is: " + wifiPosition);
 
             // Narrow MM positions in Wifi position-centered area
-            ArrayList<PositionDistance<XYPosition>> positions = new ArrayList<>();
-            for(PositionDistance<XYPosition> p : magDist.getDistances()) {
-//                Log.d("KFS", "MM position is: (" + p + "). Valid? " + GeometryUtils.isPointInCircle(p.position, wifiPosition, radius));
-                if (GeometryUtils.isPointInCircle(p.position, wifiPosition, radius))
-                    positions.add(p);
-            }
+            List<PositionDistance<XYPosition>> positions =
+                    magDist.getDistancesWithin(wifiPosition, radius);
             return DistancesMap.findWeightedAveragePosition(positions);
 
         }
@@ -0,0 +1,538 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.localization.particlefilter;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import it.cnr.isti.wnlab.indoornavigation.AbstractIndoorLocalizationStrategy;
+import it.cnr.isti.wnlab.indoornavigation.IndoorPosition;
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.BoundedResamplingStrategy;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.FilteringStrategy;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.IndoorParticleFilter;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.LikelihoodFilteringStrategy;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.MomentsResamplingStrategy;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.ParticleBudgetScheduler;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.ParticleFilterMetrics;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.ParticleSet;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.ResamplingStrategy;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.SystematicResamplingStrategy;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.UpdateStrategy;
+import it.cnr.isti.wnlab.indoornavigation.filters.particlefilter.WeightedMoments;
+import it.cnr.isti.wnlab.indoornavigation.map.FloorMap;
+import it.cnr.isti.wnlab.indoornavigation.map.OccupancyGrid;
+import it.cnr.isti.wnlab.indoornavigation.observer.Observer;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.MagneticFingerprintMap;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.PositionDistance;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.WifiFingerprintMap;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.DistancesMap;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.LikelihoodField;
+import it.cnr.isti.wnlab.indoornavigation.log.DebugLog;
+import it.cnr.isti.wnlab.indoornavigation.pdr.PDR;
+import it.cnr.isti.wnlab.indoornavigation.utils.math.GaussianSampler;
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+/**
+ * A localization strategy that uses the Particle Filter.
+ */
+public class ParticleFilterStrategy
+        extends AbstractIndoorLocalizationStrategy
+        implements Observer<PDR.Result> {
+
+    // Motion model
+    private final static float ANGLE_STANDARD_DEVIATION = (float) Math.PI/2; // N(0,PI/2)
+    private final static float SPEED_STANDARD_DEVIATION = 0.15f; // N(0,(0.15)^2)
+    // Lower bound of a fingerprint's likelihood, so that no particle's weight drops to zero
+    private final static float MIN_FINGERPRINT_LIKELIHOOD = 1e-3f;
+    private float stepLength;
+
+    // Particle StateEstimationFilter
+    private IndoorParticleFilter particleFilter;
+    private final int particlesNumber;
+    private ResamplingStrategy resampling;
+    // Filled by the resampling with the new generation (see getMoments)
+    private WeightedMoments moments;
+    // Fingerprints weight particles instead of killing them
+    private boolean likelihoodWeighting;
+    private final LikelihoodFilteringStrategy likelihoodFiltering;
+    // Particles budget for a target latency (null if the number isn't bounded by time)
+    private ParticleBudgetScheduler scheduler;
+    private ParticleFilterMetrics metrics;
+    // The estimate of the last step, built when first asked for (null until then)
+    private IndoorPosition lastPosition;
+    private long lastStepTime;
+
+    // Map
+    private FloorMap floorMap;
+
+    // PDR and inertial
+    private PDR pdr;
+    private PDR.Result lastPDRResult;
+
+    // Fingerprint distances rasterised once per measurement (cell side 0 means no field)
+    private float likelihoodFieldCellSize = LikelihoodField.DEFAULT_CELL_SIZE;
+
+    // Wifi (distances and limit are fetched once per step, before the particles are moved)
+    private WifiFingerprintMap wifiFing;
+    private List<PositionDistance<XYPosition>> wifiDistances;
+    private float wifiDistanceMaxLimit;
+    private LikelihoodField wifiField;
+    private DistancesMap<XYPosition,AccessPoints> lastWifiDistances;
+
+    // Magnetic
+    private MagneticFingerprintMap magFing;
+    private List<PositionDistance<XYPosition>> magneticDistances;
+    private float magneticDistanceMaxLimit;
+    private LikelihoodField magneticField;
+    private DistancesMap<XYPosition,MagneticField> lastMagDistances;
+
+    /**
+     * Strategy using a ParticleFilter with initial position.
+     * @param initialPosition
+     * @param particlesNumber
+     */
+    public ParticleFilterStrategy(
+            // Initial position and particles number
+            XYPosition initialPosition,
+            int particlesNumber,
+            // Map
+            final FloorMap floorMap,
+            // Featured step length
+            float stepLength,
+            // PDR
+            PDR pdr,
+            // Wifi localization
+            WifiFingerprintMap wiFing,
+            DistancesMap<XYPosition, AccessPoints> wifiDist,
+            // Magnetic mismatch
+            MagneticFingerprintMap magFing,
+            DistancesMap<XYPosition, MagneticField> magDist
+    ) {
+        /*
+         * Motion model
+         */
+
+        this.floorMap = floorMap;
+        this.stepLength = stepLength;
+
+        /*
+         * Particle StateEstimationFilter
+         */
+
+        // Initialize PF
+        this.particlesNumber = particlesNumber;
+        this.likelihoodFiltering = new LikelihoodFilteringStrategy() {
+            @Override
+            protected float getLogLikelihood(float x, float y) {
+                return fingerprintsLogLikelihood(x, y);
+            }
+        };
+        this.resampling = new SystematicResamplingStrategy(
+                particlesNumber, SystematicResamplingStrategy.DEFAULT_ESS_THRESHOLD);
+        particleFilter = new IndoorParticleFilter(
+                // Initial position
+                initialPosition,
+                // Create particles
+                ParticleSet.create(initialPosition, particlesNumber),
+                // Move particles
+                new UpdateStrategy() {
+                    @Override
+                    public void update(ParticleSet particles, int from, int to, RandomStream random) {
+                        updateAndFilter(particles, from, to, random);
+                    }
+                },
+                // Random filtering is in previous function (to save an iteration over all particles),
+                // weighting by likelihood is here
+                new FilteringStrategy() {
+                    @Override
+                    public void filter(ParticleSet particles, int from, int to, RandomStream random) {
+                        if(likelihoodWeighting)
+                            likelihoodFiltering.filter(particles, from, to, random);
+                    }
+                },
+                // Regenerate particles, filling the moments on the way
+                new MomentsResamplingStrategy() {
+                    @Override
+                    public void regenerate(ParticleSet particles, RandomStream random) {
+                        regenerateParticles(particles, random);
+                    }
+
+                    @Override
+                    public void setMoments(WeightedMoments moments) {
+                        ParticleFilterStrategy.this.moments = moments;
+                        if(resampling instanceof MomentsResamplingStrategy)
+                            ((MomentsResamplingStrategy) resampling).setMoments(moments);
+                    }
+                },
+                // The position is the weighted average of the particles, from their moments
+                null);
+
+        /*
+         * PDR
+         */
+
+        // Register for PDR updates. These trigger the PF.
+        this.pdr = pdr;
+
+        /*
+         * Wifi
+         */
+
+        // Wifi fingerprint and distances map
+        this.wifiFing = wiFing;
+        this.lastWifiDistances = wifiDist;
+
+        /*
+         * Magnetic
+         */
+
+        // Magnetic fingerprint and distances map
+        this.magFing = magFing;
+        this.lastMagDistances = magDist;
+    }
+
+    /**
+     * Makes the filter reproducible: the same seed with the same inputs gives the same positions.
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        particleFilter.setSeed(seed);
+    }
+
+    /**
+     * @param enabled If true, fingerprints weight the particles by their likelihood instead of
+     *                killing them at random. Resampling is then driven by the weights.
+     */
+    public void setLikelihoodWeighting(boolean enabled) {
+        this.likelihoodWeighting = enabled;
+    }
+
+    /**
+     * @param resampling How the particles are regenerated, i.e. one of the
+     *                   WeightedResamplingStrategy subclasses (systematic by default) or
+     *                   KldResamplingStrategy, that adapts the particles number.
+     */
+    public void setResamplingStrategy(ResamplingStrategy resampling) {
+        this.resampling = resampling;
+        if(resampling instanceof MomentsResamplingStrategy)
+            ((MomentsResamplingStrategy) resampling).setMoments(moments);
+    }
+
+    /**
+     * @return The weighted moments of the particles: the covariance of their positions is the
+     * uncertainty of the estimate.
+     */
+    public WeightedMoments getMoments() {
+        return particleFilter.getMoments();
+    }
+
+    /**
+     * @param metrics Receives the figures of every step, or null.
+     */
+    public void setMetrics(ParticleFilterMetrics metrics) {
+        this.metrics = metrics;
+        particleFilter.setMetrics(metrics);
+        if(scheduler != null)
+            scheduler.setMetrics(metrics);
+    }
+
+    /**
+     * Bounds the particles number so that a step lasts about targetLatency. The bound is
+     * applied if the resampling strategy is a BoundedResamplingStrategy.
+     * @param targetLatency Milliseconds, or 0 to remove the bound.
+     * @param floor The minimum particles number.
+     * @param ceiling The maximum particles number.
+     */
+    public void setLatencyTarget(long targetLatency, int floor, int ceiling) {
+        if(targetLatency > 0) {
+            scheduler = new ParticleBudgetScheduler(targetLatency * 1000000L, floor, ceiling);
+            scheduler.setMetrics(metrics);
+        } else {
+            scheduler = null;
+            if(resampling instanceof BoundedResamplingStrategy)
+                ((BoundedResamplingStrategy) resampling).setMaxParticles(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Particles look up the fingerprint distance in their cell of a field built once per
+     * measurement, instead of interpolating it from the K nearest positions.
+     * @param cellSize Side of the field's cells, in meters, or 0 to interpolate per particle.
+     */
+    public void setLikelihoodFieldCellSize(float cellSize) {
+        this.likelihoodFieldCellSize = cellSize;
+        wifiField = null;
+        magneticField = null;
+    }
+
+    /**
+     * Moves and filters the particles in parallel when they are at least threshold.
+     * @param executor null for sequential mode.
+     * @param threshold
+     */
+    public void setExecutor(ExecutorService executor, int threshold) {
+        particleFilter.setExecutor(executor, threshold);
+    }
+
+    /**
+     * The estimate is built from the filter's moments on the first call after a step (steps
+     * without observers don't build it), so call this on the thread notifying the steps.
+     * @return The position estimated at the last step, with the time of the step.
+     */
+    @Override
+    public IndoorPosition getCurrentPosition() {
+        IndoorPosition position = lastPosition;
+        if(position == null) {
+            long time = (lastStepTime != 0L ? lastStepTime : System.currentTimeMillis());
+            position = new IndoorPosition(particleFilter.get2DPosition(),floorMap.getFloor(),time);
+            lastPosition = position;
+        }
+        return position;
+    }
+
+    /**********************************************************************
+     * FIRST STEP: Move particles
+     * SECOND STEP: StateEstimationFilter particles
+     * (these steps are exceptionally together)
+     *********************************************************************/
+
+    /**
+     * At every step, it is dAngle ~ N(0,PI/2) and dSpeed ~ N(0,(0.15)^2).
+     * Second step: filter invalid particles.
+     * Nothing is logged or allocated per particle. Ranges may run concurrently: everything
+     * shared is only read, and random numbers come from the range's stream.
+     */
+    private void updateAndFilter(ParticleSet particles, int from, int to, RandomStream random) {
+        // Check for particles to eliminate
+        for(int i = from; i < to; i++) {
+            float x = particles.getX(i);
+            float y = particles.getY(i);
+
+            // Update x
+            float dx = (stepLength + GaussianSampler.nextGaussian(random, 0.f, SPEED_STANDARD_DEVIATION)) *
+                    ((float) Math.cos(lastPDRResult.heading + GaussianSampler.nextGaussian(random, 0.f, ANGLE_STANDARD_DEVIATION)));
+            float newx = x + dx;
+            // Update y
+            float dy = -(stepLength + GaussianSampler.nextGaussian(random, 0.f, SPEED_STANDARD_DEVIATION)) *
+                    ((float) Math.sin(lastPDRResult.heading + GaussianSampler.nextGaussian(random, 0.f, ANGLE_STANDARD_DEVIATION)));
+            float newy = y + dy;
+
+            // Let's break the schema: filter here
+            if(
+                    floorMap.isValidMove(x, y, newx, newy) // Map checking, walls included
+                    && (likelihoodWeighting || (
+                            wifiFilterCheck(x, y, random) // Wifi fingerprint
+                            && magneticFilterCheck(x, y, random))) // Magnetic fingerprint
+            ) {
+                particles.setPosition(i, newx, newy);
+            } else {
+                // Removed by the filter before regeneration
+                particles.kill(i);
+            }
+        }
+    }
+
+    /**
+     * Fetches the fingerprint distances for this step, so that every particle is checked
+     * against the same ones. Fields are built again only for new measurements.
+     */
+    private void fetchDistances() {
+        wifiDistances = lastWifiDistances.getDistances();
+        if(wifiDistances == null)
+            wifiField = null;
+        else if(wifiField == null || wifiField.getSource() != wifiDistances) {
+            wifiDistanceMaxLimit = getMaxLimit(wifiDistances);
+            wifiField = buildField(wifiDistances, wifiDistanceMaxLimit);
+        }
+        magneticDistances = lastMagDistances.getDistances();
+        if(magneticDistances == null)
+            magneticField = null;
+        else if(magneticField == null || magneticField.getSource() != magneticDistances) {
+            magneticDistanceMaxLimit = getMaxLimit(magneticDistances);
+            magneticField = buildField(magneticDistances, magneticDistanceMaxLimit);
+        }
+    }
+
+    /**
+     * @return The field of the distances over the floor, or null if there is no field.
+     */
+    private LikelihoodField buildField(List<PositionDistance<XYPosition>> distances, float maxLimit) {
+        OccupancyGrid grid = floorMap.getOccupancyGrid();
+        if(likelihoodFieldCellSize <= 0.f || grid == null)
+            return null;
+        float width = grid.getColumns() * grid.getResolution();
+        float height = grid.getRows() * grid.getResolution();
+        return new LikelihoodField(
+                distances, maxLimit, MIN_FINGERPRINT_LIKELIHOOD,
+                grid.getOriginX(), grid.getOriginY(), likelihoodFieldCellSize,
+                (int) Math.ceil(width / likelihoodFieldCellSize),
+                (int) Math.ceil(height / likelihoodFieldCellSize));
+    }
+
+    /**
+     * @param x Particle's x.
+     * @param y Particle's y.
+     * @param random
+     * @return true if the particle should survive, false otherwise.
+     */
+    private boolean wifiFilterCheck(float x, float y, RandomStream random) {
+        // No result yet: nothing to filter by
+        if(wifiDistances == null)
+            return true;
+
+        if(wifiField != null)
+            return random.nextFloat() >= wifiField.getRelativeDistance(x, y);
+
+        // Call generic function
+        return fingerprintFilterCheck(x, y, wifiDistances, wifiDistanceMaxLimit, random);
+    }
+
+    /**
+     * @param x Particle's x.
+     * @param y Particle's y.
+     * @param random
+     * @return true if the particle should survive, false otherwise.
+     */
+    private boolean magneticFilterCheck(float x, float y, RandomStream random) {
+        // No result yet: nothing to filter by
+        if(magneticDistances == null)
+            return true;
+
+        if(magneticField != null)
+            return random.nextFloat() >= magneticField.getRelativeDistance(x, y);
+
+        // Call generic function
+        return fingerprintFilterCheck(x, y, magneticDistances, magneticDistanceMaxLimit, random);
+    }
+
+    /**
+     * When filtering by fingerprints, the particle dies when the random number between 0 and N
+     * is less than particle's interpolated distance.
+     * This function decides N.
+     * @param pds
+     * @return
+     */
+    public float getMaxLimit(List<PositionDistance<XYPosition>> pds) {
+        // Find average between distances and minimum distance
+        /*float dSum = 0.f;*/
+        /*float minDistance = Float.MAX_VALUE;*/
+        float maxDistance = 0.f;
+        for(int i = 0; i < pds.size(); i++) {
+            PositionDistance<XYPosition> pd = pds.get(i);
+            /*dSum += pd.distance;*/
+            /*if(pd.distance < minDistance)
+                minDistance = pd.distance;*/
+            if(pd.distance > maxDistance)
+                maxDistance = pd.distance;
+        }
+        /*float avgDistance = dSum / pds.size();*/
+
+        return maxDistance;
+    }
+
+    /**
+     * @param px Particle's x.
+     * @param py Particle's y.
+     * @param distances
+     * @return true if the particle should survive, false otherwise.
+     */
+    private boolean fingerprintFilterCheck(
+            float px,
+            float py,
+            List<PositionDistance<XYPosition>> distances,
+            float maxLimit,
+            RandomStream random
+    ) {
+        float particlePositionDistance = LikelihoodField.interpolateDistance(px, py, distances);
+
+        // If random number belongs to [0; positionDistance] kill the particle, else save it.
+        // Doing so, the less distanced the particles is, the less the probability of being killed.
+        return random.nextFloat()*(maxLimit) >= particlePositionDistance;
+    }
+
+    /**
+     * The log of the probability that fingerprintFilterCheck lets the particle survive, for
+     * Wifi and magnetic field together.
+     * @param px Particle's x.
+     * @param py Particle's y.
+     * @return
+     */
+    private float fingerprintsLogLikelihood(float px, float py) {
+        float logLikelihood = 0.f;
+        if(wifiField != null)
+            logLikelihood += wifiField.getLogLikelihood(px, py);
+        else if(wifiDistances != null)
+            logLikelihood += fingerprintLogLikelihood(px, py, wifiDistances, wifiDistanceMaxLimit);
+        if(magneticField != null)
+            logLikelihood += magneticField.getLogLikelihood(px, py);
+        else if(magneticDistances != null)
+            logLikelihood += fingerprintLogLikelihood(px, py, magneticDistances, magneticDistanceMaxLimit);
+        return logLikelihood;
+    }
+
+    private float fingerprintLogLikelihood(
+            float px,
+            float py,
+            List<PositionDistance<XYPosition>> distances,
+            float maxLimit
+    ) {
+        if(maxLimit <= 0.f)
+            return 0.f;
+        float survival = 1.f - LikelihoodField.interpolateDistance(px, py, distances) / maxLimit;
+        return (float) Math.log(Math.max(MIN_FINGERPRINT_LIKELIHOOD, survival));
+    }
+
+    /**********************************************************************
+     * THIRD STEP: Regenerate lost particles
+     *********************************************************************/
+
+    private void regenerateParticles(ParticleSet particles, RandomStream random) {
+        if(DebugLog.isEnabled())
+            DebugLog.d("PF", "Regeneration step: " + particles.size() + " particles survived");
+
+        // Assure that there's at least one particle
+        if(particles.isEmpty()) {
+            XYPosition position = particleFilter.get2DPosition();
+            float newX = position.x + lastPDRResult.dE;
+            float newY = position.y + lastPDRResult.dN;
+            particles.add(newX, newY, 1.f / particlesNumber);
+        }
+
+        // Weights are in log space after likelihood filtering
+        if(likelihoodWeighting)
+            LikelihoodFilteringStrategy.normalize(particles);
+
+        // Draw the missing particles from the survived ones, by weight
+        resampling.regenerate(particles, random);
+    }
+
+    @Override
+    protected void startEmission() {
+        pdr.register(this);
+    }
+
+    @Override
+    protected void stopEmission() {
+        pdr.unregister(this);
+    }
+
+    @Override
+    public void notify(PDR.Result data) {
+        lastPDRResult = data;
+        fetchDistances();
+        if(scheduler != null) {
+            // The budget of this step comes from the previous ones
+            if(resampling instanceof BoundedResamplingStrategy)
+                ((BoundedResamplingStrategy) resampling).setMaxParticles(scheduler.getBudget());
+            scheduler.filter(particleFilter);
+        } else
+            particleFilter.filter();
+
+        // The estimate is built from the moments only if someone asks for it
+        lastPosition = null;
+        lastStepTime = System.currentTimeMillis();
+        if(!mObservers.isEmpty())
+            notifyObservers(getCurrentPosition());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.math;
+
+/**
+ * Normal distribution sampler with the ziggurat method (Marsaglia and Tsang, 2000).
+ * <p>
+ * About 98% of the samples cost one random long and a multiplication. The box index and the
+ * sample value are taken from different bits of the long, so they aren't correlated.
+ * A sampler is not thread safe: use one per stream.
+ */
+public final class GaussianSampler {
+
+    private static final int BOXES = 128;
+
+    // Right end of the base box, and its area (the area of every box)
+    private static final double R = 3.442619855899;
+    private static final double V = 9.91256303526217e-3;
+
+    // Acceptance thresholds, box widths (scaled to 32-bit ints) and densities at box ends
+    private static final int[] K = new int[BOXES];
+    private static final double[] W = new double[BOXES];
+    private static final double[] F = new double[BOXES];
+
+    static {
+        final double m = 2147483648.0;
+        double dn = R;
+        double tn = dn;
+        double q = V / Math.exp(-.5 * dn * dn);
+
+        K[0] = (int) ((dn / q) * m);
+        K[1] = 0;
+        W[0] = q / m;
+        W[BOXES - 1] = dn / m;
+        F[0] = 1.;
+        F[BOXES - 1] = Math.exp(-.5 * dn * dn);
+
+        for(int i = BOXES - 2; i >= 1; i--) {
+            dn = Math.sqrt(-2. * Math.log(V / dn + Math.exp(-.5 * dn * dn)));
+            K[i + 1] = (int) ((dn / tn) * m);
+            tn = dn;
+            F[i] = Math.exp(-.5 * dn * dn);
+            W[i] = dn / m;
+        }
+    }
+
+    private final RandomStream random;
+
+    /**
+     * @param random The source of randomness.
+     */
+    public GaussianSampler(RandomStream random) {
+        this.random = random;
+    }
+
+    /**
+     * @return The stream this sampler draws from.
+     */
+    public RandomStream getRandomStream() {
+        return random;
+    }
+
+    /**
+     * @return A sample of N(0,1).
+     */
+    public double nextGaussian() {
+        return nextGaussian(random);
+    }
+
+    /**
+     * @param mean
+     * @param standardDeviation
+     * @return A sample of N(mean, standardDeviation^2).
+     */
+    public float nextGaussian(float mean, float standardDeviation) {
+        return mean + standardDeviation * (float) nextGaussian(random);
+    }
+
+    /**
+     * Samples from any stream, i.e. from a worker's own stream without making a sampler for it.
+     * @param random
+     * @return A sample of N(0,1).
+     */
+    public static double nextGaussian(RandomStream random) {
+        while(true) {
+            long bits = random.nextLong();
+            int box = (int) bits & (BOXES - 1);
+            int hz = (int) (bits >>> 32);
+
+            // Inside the box's rectangle
+            if(Math.abs(hz) < K[box])
+                return hz * W[box];
+
+            double x = hz * W[box];
+            if(box == 0) {
+                // Tail beyond R
+                double y;
+                do {
+                    x = -Math.log(1. - random.nextDouble()) / R;
+                    y = -Math.log(1. - random.nextDouble());
+                } while(y + y < x * x);
+                return (hz > 0 ? R + x : -R - x);
+            }
+
+            // Wedge between the rectangle and the density
+            if(F[box] + random.nextDouble() * (F[box - 1] - F[box]) < Math.exp(-.5 * x * x))
+                return x;
+        }
+    }
+
+    /**
+     * @param random
+     * @param mean
+     * @param standardDeviation
+     * @return A sample of N(mean, standardDeviation^2).
+     */
+    public static float nextGaussian(RandomStream random, float mean, float standardDeviation) {
+        return mean + standardDeviation * (float) nextGaussian(random);
+    }
+}
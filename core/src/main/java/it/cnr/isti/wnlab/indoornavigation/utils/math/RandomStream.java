@@ -0,0 +1,121 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.math;
+
+/**
+ * Fast pseudo-random generator (xoroshiro128++) for simulation.
+ * <p>
+ * Streams are seedable, so runs are reproducible, and can be split: split() and
+ * forSubstream(seed, index) give statistically independent streams, i.e. one per worker.
+ * A stream is not thread safe.
+ */
+public final class RandomStream {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long s0, s1;
+
+    public RandomStream(long seed) {
+        reseed(seed);
+    }
+
+    /**
+     * @return A stream seeded from the clock.
+     */
+    public static RandomStream fromTime() {
+        return new RandomStream(System.nanoTime() ^ System.currentTimeMillis() * GOLDEN_GAMMA);
+    }
+
+    /**
+     * @param seed The master seed.
+     * @param index
+     * @return The index-th stream derived from the seed: the same (seed,index) gives the same
+     * stream, different indices give independent ones.
+     */
+    public static RandomStream forSubstream(long seed, long index) {
+        RandomStream stream = new RandomStream(0);
+        stream.reseed(seed, index);
+        return stream;
+    }
+
+    /**
+     * Restarts the stream, as if it had been created with this seed.
+     * @param seed
+     */
+    public void reseed(long seed) {
+        // The state is expanded with SplitMix64, that never gives the invalid all-zero state
+        long z = seed;
+        s0 = mix(z += GOLDEN_GAMMA);
+        s1 = mix(z + GOLDEN_GAMMA);
+        if((s0 | s1) == 0)
+            s1 = GOLDEN_GAMMA;
+    }
+
+    /**
+     * Restarts the stream as forSubstream(seed, index), without allocating.
+     * @param seed The master seed.
+     * @param index
+     */
+    public void reseed(long seed, long index) {
+        reseed(mix(seed + mix(index + 1) * GOLDEN_GAMMA));
+    }
+
+    /**
+     * @return A new stream, independent of this one, whose seed is taken from this one.
+     */
+    public RandomStream split() {
+        return new RandomStream(mix(nextLong()));
+    }
+
+    public long nextLong() {
+        long a = s0;
+        long b = s1;
+        long result = Long.rotateLeft(a + b, 17) + a;
+        b ^= a;
+        s0 = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+        s1 = Long.rotateLeft(b, 28);
+        return result;
+    }
+
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * @param bound
+     * @return An int uniformly distributed in [0, bound).
+     */
+    public int nextInt(int bound) {
+        if(bound <= 0)
+            throw new IllegalArgumentException("bound must be positive");
+        // Multiply-shift with rejection of the biased values
+        long m = (nextLong() >>> 32) * bound;
+        if((m & 0xFFFFFFFFL) < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while((m & 0xFFFFFFFFL) < threshold)
+                m = (nextLong() >>> 32) * bound;
+        }
+        return (int) (m >>> 32);
+    }
+
+    /**
+     * @return A double uniformly distributed in [0, 1).
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return A float uniformly distributed in [0, 1).
+     */
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
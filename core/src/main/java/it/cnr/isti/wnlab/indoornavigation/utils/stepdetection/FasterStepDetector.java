@@ -1,6 +1,4 @@
-package it.cnr.isti.wnlab.indoornavigation.android.stepdetection;
-
-import android.hardware.SensorManager;
+package it.cnr.isti.wnlab.indoornavigation.utils.stepdetection;
 
 import it.cnr.isti.wnlab.indoornavigation.StepDetector;
 import it.cnr.isti.wnlab.indoornavigation.observer.Emitter;
@@ -9,14 +7,18 @@ import it.cnr.isti.wnlab.indoornavigation.types.inertial.Acceleration;
 import it.cnr.isti.wnlab.indoornavigation.types.Step;
 
 /**
- * This class is an Android implementation of Step Detection. I used this because the one in the
- * Android Framework is too slow in its updates.
+ * This class is an implementation of Step Detection. I used this because the one in the
+ * Android Framework is too slow in its updates. It only needs accelerations, from any source.
  *
  * Refers to https://github.com/bagilevi/android-pedometer (GNU GPL)
  * @author Levente Bagi, Michele Agostini (adaptment)
  */
 public class FasterStepDetector extends StepDetector implements Observer<Acceleration> {
 
+    // Android's SensorManager.STANDARD_GRAVITY and SensorManager.MAGNETIC_FIELD_EARTH_MAX
+    private static final float STANDARD_GRAVITY = 9.80665f;
+    private static final float MAGNETIC_FIELD_EARTH_MAX = 60.0f;
+
     private float   mLimit = 1.9f; // Sperimentally found on my slow walk. It was 10.0 before
     private float   mLastValues[] = new float[3*2];
     private float   mScale[] = new float[2];
@@ -32,8 +34,8 @@ public class FasterStepDetector extends StepDetector implements Observer<Acceler
     public FasterStepDetector(Emitter<Acceleration> accelerometer) {
         int h = 480;
         mYOffset = h * 0.5f;
-        mScale[0] = - (h * 0.5f * (1.0f / (SensorManager.STANDARD_GRAVITY * 2)));
-        mScale[1] = - (h * 0.5f * (1.0f / (SensorManager.MAGNETIC_FIELD_EARTH_MAX)));
+        mScale[0] = - (h * 0.5f * (1.0f / (STANDARD_GRAVITY * 2)));
+        mScale[1] = - (h * 0.5f * (1.0f / (MAGNETIC_FIELD_EARTH_MAX)));
         mAccelerometer = accelerometer;
     }
 
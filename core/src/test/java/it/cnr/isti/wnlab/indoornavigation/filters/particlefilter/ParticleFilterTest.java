@@ -0,0 +1,115 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Chunked filtering in parallel against the sequential one: with the same seed and chunk size
+ * the particles must be bit-identical after every epoch.
+ */
+public class ParticleFilterTest {
+
+    private static final int PARTICLES = 1000;
+    private static final int CHUNK_SIZE = 64;
+    private static final int EPOCHS = 20;
+    private static final long SEED = 42;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    // A noisy step east; about one particle out of ten dies
+    private static final UpdateStrategy WALK = new UpdateStrategy() {
+        @Override
+        public void update(ParticleSet particles, int from, int to, RandomStream random) {
+            for(int i = from; i < to; i++) {
+                if(random.nextInt(10) == 0)
+                    particles.kill(i);
+                else
+                    particles.setPosition(i,
+                            particles.getX(i) + .6f + (random.nextFloat() - .5f),
+                            particles.getY(i) + (random.nextFloat() - .5f));
+            }
+        }
+    };
+
+    // Likelihood of a noisy observation of the line y = 0
+    private static final FilteringStrategy OBSERVE = new FilteringStrategy() {
+        @Override
+        public void filter(ParticleSet particles, int from, int to, RandomStream random) {
+            for(int i = from; i < to; i++) {
+                if(!particles.isAlive(i))
+                    continue;
+                float dy = particles.getY(i) - (random.nextFloat() - .5f) * .2f;
+                particles.setWeight(i, particles.getWeight(i) * (float) Math.exp(-dy * dy));
+            }
+        }
+    };
+
+    private static ParticleFilter createFilter(long seed) {
+        ParticleSet particles = ParticleSet.create(new XYPosition(0.f, 0.f), PARTICLES);
+        ParticleFilter filter = new ParticleFilter(particles, WALK, OBSERVE,
+                new SystematicResamplingStrategy(PARTICLES, WeightedResamplingStrategy.DEFAULT_ESS_THRESHOLD));
+        filter.setSeed(seed);
+        filter.setChunkSize(CHUNK_SIZE);
+        return filter;
+    }
+
+    private static boolean sameParticles(ParticleSet p1, ParticleSet p2) {
+        if(p1.size() != p2.size())
+            return false;
+        for(int i = 0; i < p1.size(); i++)
+            if(Float.floatToIntBits(p1.getX(i)) != Float.floatToIntBits(p2.getX(i))
+                    || Float.floatToIntBits(p1.getY(i)) != Float.floatToIntBits(p2.getY(i))
+                    || Float.floatToIntBits(p1.getWeight(i)) != Float.floatToIntBits(p2.getWeight(i)))
+                return false;
+        return true;
+    }
+
+    @Test
+    public void parallel_isBitIdenticalToSequential() throws Exception {
+        ParticleFilter sequential = createFilter(SEED);
+        ParticleFilter parallel = createFilter(SEED);
+        parallel.setExecutor(executor, 0);
+        for(int e = 0; e < EPOCHS; e++) {
+            sequential.filter();
+            parallel.filter();
+            assertTrue("Epoch " + e, sameParticles(sequential.getParticles(), parallel.getParticles()));
+            XYPosition m1 = sequential.getMoments().getMean();
+            XYPosition m2 = parallel.getMoments().getMean();
+            assertEquals(Float.floatToIntBits(m1.x), Float.floatToIntBits(m2.x));
+            assertEquals(Float.floatToIntBits(m1.y), Float.floatToIntBits(m2.y));
+        }
+    }
+
+    @Test
+    public void sequential_dependsOnSeedOnly() throws Exception {
+        ParticleFilter f1 = createFilter(SEED);
+        ParticleFilter f2 = createFilter(SEED);
+        ParticleFilter other = createFilter(SEED + 1);
+        for(int e = 0; e < EPOCHS; e++) {
+            f1.filter();
+            f2.filter();
+            other.filter();
+        }
+        assertTrue(sameParticles(f1.getParticles(), f2.getParticles()));
+        assertFalse(sameParticles(f1.getParticles(), other.getParticles()));
+    }
+}
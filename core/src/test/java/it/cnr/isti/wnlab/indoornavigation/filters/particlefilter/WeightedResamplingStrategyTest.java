@@ -0,0 +1,181 @@
+package it.cnr.isti.wnlab.indoornavigation.filters.particlefilter;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.utils.math.RandomStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts of the systematic, stratified and residual resampling on seeded random weights, and the
+ * new generation that regenerate makes from them.
+ */
+public class WeightedResamplingStrategyTest {
+
+    private static final int SEEDS = 2000;
+
+    /**
+     * @return n particles on distinct positions (i,-i), with random weights; some are zero, but
+     * not the first one.
+     */
+    private static ParticleSet randomParticles(int n, Random random) {
+        ParticleSet particles = new ParticleSet(n);
+        for(int i = 0; i < n; i++)
+            particles.add(i, -i, (i > 0 && random.nextInt(5) == 0 ? 0.f : random.nextFloat()));
+        return particles;
+    }
+
+    private static double weightsSum(ParticleSet particles) {
+        double sum = 0.;
+        for(int i = 0; i < particles.size(); i++)
+            sum += particles.getWeight(i);
+        return sum;
+    }
+
+    private static int[] counts(WeightedResamplingStrategy strategy, ParticleSet particles, int m, long seed) {
+        int[] counts = new int[particles.size()];
+        strategy.computeCounts(particles, particles.size(), weightsSum(particles), m, counts, new RandomStream(seed));
+        return counts;
+    }
+
+    /**
+     * Checks that counts sum to m and are within maxError of m*w, and that their mean over many
+     * seeds is m*w.
+     */
+    private static void checkCounts(WeightedResamplingStrategy strategy, double maxError) {
+        Random random = new Random(42);
+        int[][] sizes = {{50, 50}, {50, 200}, {200, 50}, {1, 10}};
+        for(int[] size : sizes) {
+            int n = size[0], m = size[1];
+            ParticleSet particles = randomParticles(n, random);
+            double sum = weightsSum(particles);
+            double[] means = new double[n];
+            for(int s = 0; s < SEEDS; s++) {
+                int[] counts = counts(strategy, particles, m, s);
+                int total = 0;
+                for(int i = 0; i < n; i++) {
+                    double expected = m * particles.getWeight(i) / sum;
+                    assertTrue("Count " + counts[i] + " for " + expected,
+                            Math.abs(counts[i] - expected) < maxError);
+                    if(particles.getWeight(i) == 0.f)
+                        assertEquals(0, counts[i]);
+                    total += counts[i];
+                    means[i] += counts[i] / (double) SEEDS;
+                }
+                assertEquals(m, total);
+            }
+            for(int i = 0; i < n; i++)
+                assertEquals(m * particles.getWeight(i) / sum, means[i], .1);
+        }
+    }
+
+    @Test
+    public void systematic_countsAreFloorOrCeil() throws Exception {
+        checkCounts(new SystematicResamplingStrategy(1, 1.f), 1.);
+    }
+
+    @Test
+    public void stratified_countsAreNearExpected() throws Exception {
+        checkCounts(new StratifiedResamplingStrategy(1, 1.f), 2.);
+    }
+
+    @Test
+    public void residual_countsAreFloorOrCeil() throws Exception {
+        checkCounts(new ResidualResamplingStrategy(1, 1.f), 1.);
+    }
+
+    @Test
+    public void residual_keepsDeterministicCopies() throws Exception {
+        Random random = new Random(3);
+        ParticleSet particles = randomParticles(50, random);
+        double sum = weightsSum(particles);
+        WeightedResamplingStrategy strategy = new ResidualResamplingStrategy(1, 1.f);
+        for(int s = 0; s < 100; s++) {
+            int[] counts = counts(strategy, particles, 200, s);
+            for(int i = 0; i < particles.size(); i++)
+                assertTrue(counts[i] >= (int) (200 * particles.getWeight(i) / sum - 1e-6));
+        }
+    }
+
+    /**
+     * Regenerates with the same stream as computeCounts: every particle must appear as many times
+     * as it was counted, all with weight 1/m.
+     */
+    private static void checkRegenerate(WeightedResamplingStrategy strategy, int n, int m) {
+        Random random = new Random(n * 31 + m);
+        for(int s = 0; s < 50; s++) {
+            ParticleSet particles = randomParticles(n, random);
+            int[] counts = counts(strategy, particles, m, s);
+            WeightedMoments moments = new WeightedMoments();
+            strategy.setMoments(moments);
+            strategy.regenerate(particles, new RandomStream(s));
+
+            assertEquals(m, particles.size());
+            Map<Float, Integer> copies = new HashMap<>();
+            double meanX = 0.;
+            for(int i = 0; i < m; i++) {
+                assertEquals(1.f / m, particles.getWeight(i), 0.f);
+                assertEquals(-particles.getX(i), particles.getY(i), 0.f);
+                Integer c = copies.get(particles.getX(i));
+                copies.put(particles.getX(i), (c == null ? 1 : c + 1));
+                meanX += particles.getX(i) / (double) m;
+            }
+            for(int i = 0; i < n; i++) {
+                Integer c = copies.get((float) i);
+                assertEquals(counts[i], (c == null ? 0 : c));
+            }
+            assertEquals(m, moments.getCount());
+            assertEquals(meanX, moments.getMean().x, 1e-3);
+        }
+    }
+
+    @Test
+    public void regenerate_copiesByCounts() throws Exception {
+        int[][] sizes = {{100, 100}, {100, 300}, {300, 100}};
+        for(int[] size : sizes) {
+            int m = size[1];
+            checkRegenerate(new SystematicResamplingStrategy(m, 1.f), size[0], m);
+            checkRegenerate(new StratifiedResamplingStrategy(m, 1.f), size[0], m);
+            checkRegenerate(new ResidualResamplingStrategy(m, 1.f), size[0], m);
+        }
+    }
+
+    @Test
+    public void regenerate_withHighEss_normalizesWeights() throws Exception {
+        // Weights in [1,2): the effective sample size is above 0.9*n
+        int n = 100;
+        Random random = new Random(5);
+        ParticleSet particles = new ParticleSet(n);
+        for(int i = 0; i < n; i++)
+            particles.add(i, -i, 1.f + random.nextFloat());
+        float[] weights = new float[n];
+        for(int i = 0; i < n; i++)
+            weights[i] = particles.getWeight(i);
+        double sum = weightsSum(particles);
+
+        new SystematicResamplingStrategy(n, .5f).regenerate(particles, new RandomStream(1));
+
+        assertEquals(n, particles.size());
+        assertEquals(1., weightsSum(particles), 1e-5);
+        for(int i = 0; i < n; i++) {
+            assertEquals(i, particles.getX(i), 0.f);
+            assertEquals(weights[i] / sum, particles.getWeight(i), 1e-6);
+        }
+    }
+
+    @Test
+    public void regenerate_withDegenerateWeights_startsFromUniform() throws Exception {
+        ParticleSet particles = ParticleSet.create(new XYPosition(1.f, 2.f), 10);
+        for(int i = 0; i < 10; i++)
+            particles.setWeight(i, 0.f);
+        new SystematicResamplingStrategy(20, .5f).regenerate(particles, new RandomStream(1));
+        assertEquals(20, particles.size());
+        for(int i = 0; i < 20; i++)
+            assertEquals(1.f / 20, particles.getWeight(i), 0.f);
+    }
+}
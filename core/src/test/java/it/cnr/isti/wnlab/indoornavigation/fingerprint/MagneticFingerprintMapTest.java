@@ -0,0 +1,105 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+
+import static org.junit.Assert.*;
+
+/**
+ * K-NN through the KD-tree against the linear scan, on seeded random maps. Field values are
+ * small integers, so that many rows are at the same distance and ties are checked too.
+ */
+public class MagneticFingerprintMapTest {
+
+    private static final int ROWS = 500;
+    private static final int QUERIES = 200;
+    private static final int[] KS = {1, 3, 10, ROWS + 5};
+
+    static final Comparator<PositionDistance<XYPosition>> BY_DISTANCE =
+            new Comparator<PositionDistance<XYPosition>>() {
+                @Override
+                public int compare(PositionDistance<XYPosition> p1, PositionDistance<XYPosition> p2) {
+                    return p1.compareTo(p2);
+                }
+            };
+
+    // Rows with x < 10 only
+    static final PositionDistance.Filter WEST = new PositionDistance.Filter() {
+        @Override
+        public boolean isValid(XYPosition position, float distance) {
+            return position.x < 10.f;
+        }
+    };
+
+    private static MagneticFingerprintMap randomMap(Random random) throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for(int i = 0; i < ROWS; i++)
+            csv.append(random.nextInt(20)).append(',').append(random.nextInt(20)).append(',')
+                    .append(random.nextInt(10) - 5).append(',')
+                    .append(random.nextInt(10) - 5).append(',')
+                    .append(random.nextInt(10) + 40).append('\n');
+        return new MagneticFingerprintMap.Builder().build(new StringReader(csv.toString()));
+    }
+
+    private static MagneticField randomField(Random random) {
+        return new MagneticField(
+                random.nextInt(14) - 7, random.nextInt(14) - 7, random.nextInt(14) + 38, 3.f, 0);
+    }
+
+    /**
+     * @return The first k elements of a stable sort of all the rows, as findNearestK must return.
+     */
+    static List<PositionDistance<XYPosition>> linearScan(
+            List<PositionDistance<XYPosition>> distances, int k) {
+        Collections.sort(distances, BY_DISTANCE);
+        return (distances.size() <= k ? distances : distances.subList(0, k));
+    }
+
+    static void assertSameNearest(
+            List<PositionDistance<XYPosition>> expected, List<PositionDistance<XYPosition>> actual) {
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i).position, actual.get(i).position);
+            assertEquals(Float.floatToIntBits(expected.get(i).distance),
+                    Float.floatToIntBits(actual.get(i).distance));
+        }
+    }
+
+    @Test
+    public void findNearestK_matchesLinearScan() throws Exception {
+        Random random = new Random(42);
+        MagneticFingerprintMap map = randomMap(random);
+        for(int q = 0; q < QUERIES; q++) {
+            MagneticField field = randomField(random);
+            for(int k : KS)
+                assertSameNearest(linearScan(map.getDistancedPoints(field, null), k),
+                        map.findNearestK(field, k, null));
+        }
+    }
+
+    @Test
+    public void findNearestK_withFilter_matchesLinearScan() throws Exception {
+        Random random = new Random(7);
+        MagneticFingerprintMap map = randomMap(random);
+        for(int q = 0; q < QUERIES; q++) {
+            MagneticField field = randomField(random);
+            for(int k : KS)
+                assertSameNearest(linearScan(map.getDistancedPoints(field, WEST), k),
+                        map.findNearestK(field, k, WEST));
+        }
+    }
+
+    @Test
+    public void findNearestK_onEmptyMap() throws Exception {
+        MagneticFingerprintMap map = new MagneticFingerprintMap.Builder().build(new StringReader(""));
+        assertEquals(0, map.findNearestK(new MagneticField(0.f, 0.f, 0.f, 3.f, 0), 3, null).size());
+    }
+}
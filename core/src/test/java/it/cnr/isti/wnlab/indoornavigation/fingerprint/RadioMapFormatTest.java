@@ -0,0 +1,176 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.SingleAccessPoint;
+
+import static org.junit.Assert.*;
+
+/**
+ * Maps written with writeRadioMap and read back by the builders must answer like the originals;
+ * a magnetic map whose KD-tree was tampered with must be rejected.
+ */
+public class RadioMapFormatTest {
+
+    private static final int ROWS = 500;
+    private static final int QUERIES = 100;
+
+    // Magnetic file layout: header, rows, five float columns, then the tree
+    private static final int PERMUTATION_OFFSET = 16 + 4 + 5 * 4 * ROWS;
+    private static final int AXES_OFFSET = PERMUTATION_OFFSET + 4 * ROWS;
+
+    private static MagneticFingerprintMap randomMagneticMap(Random random) throws Exception {
+        // Distinct values, so that any change to the tree breaks its order
+        StringBuilder csv = new StringBuilder();
+        for(int i = 0; i < ROWS; i++)
+            csv.append(random.nextFloat() * 20.f).append(',').append(random.nextFloat() * 20.f)
+                    .append(',').append(random.nextFloat() * 10.f - 5.f)
+                    .append(',').append(random.nextFloat() * 10.f - 5.f)
+                    .append(',').append(random.nextFloat() * 10.f + 40.f).append('\n');
+        return new MagneticFingerprintMap.Builder().build(new StringReader(csv.toString()));
+    }
+
+    private static WifiFingerprintMap randomWifiMap(Random random) throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for(int i = 0; i < ROWS; i++) {
+            csv.append(random.nextInt(20)).append(',').append(random.nextInt(20));
+            for(int a = 0; a < 30; a++)
+                if(random.nextInt(5) == 0)
+                    csv.append(",ap").append(a).append(',').append(-40 - random.nextInt(50));
+            csv.append('\n');
+        }
+        return new WifiFingerprintMap.Builder().build(new StringReader(csv.toString()));
+    }
+
+    private static void assertSameResult(
+            List<PositionDistance<XYPosition>> expected, List<PositionDistance<XYPosition>> actual) {
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).position.x, actual.get(i).position.x, 0.f);
+            assertEquals(expected.get(i).position.y, actual.get(i).position.y, 0.f);
+            assertEquals(Float.floatToIntBits(expected.get(i).distance),
+                    Float.floatToIntBits(actual.get(i).distance));
+        }
+    }
+
+    private static File writeMagnetic(MagneticFingerprintMap map) throws Exception {
+        File file = File.createTempFile("magnetic", ".rmap");
+        file.deleteOnExit();
+        map.writeRadioMap(file);
+        return file;
+    }
+
+    @Test
+    public void magnetic_roundTrip() throws Exception {
+        Random random = new Random(42);
+        MagneticFingerprintMap map = randomMagneticMap(random);
+        File file = writeMagnetic(map);
+        assertTrue(RadioMapFormat.isRadioMap(file));
+        MagneticFingerprintMap loaded = new MagneticFingerprintMap.Builder().build(file);
+        assertEquals(map.size(), loaded.size());
+        for(int q = 0; q < QUERIES; q++) {
+            MagneticField field = new MagneticField(random.nextFloat() * 14.f - 7.f,
+                    random.nextFloat() * 14.f - 7.f, random.nextFloat() * 14.f + 38.f, 3.f, 0);
+            for(int k : new int[] {1, 5, ROWS + 1})
+                assertSameResult(map.findNearestK(field, k, null), loaded.findNearestK(field, k, null));
+        }
+    }
+
+    @Test
+    public void wifi_roundTrip() throws Exception {
+        Random random = new Random(7);
+        WifiFingerprintMap map = randomWifiMap(random);
+        File file = File.createTempFile("wifi", ".rmap");
+        file.deleteOnExit();
+        map.writeRadioMap(file);
+        WifiFingerprintMap loaded = new WifiFingerprintMap.Builder().build(file);
+        assertEquals(map.size(), loaded.size());
+        assertEquals(map.getDictionary().size(), loaded.getDictionary().size());
+        for(int q = 0; q < QUERIES; q++) {
+            List<SingleAccessPoint> aps = new ArrayList<>();
+            for(int a = 0; a < 35; a++)
+                if(random.nextInt(4) == 0)
+                    aps.add(new SingleAccessPoint("ap" + a, -40 - random.nextInt(50)));
+            AccessPoints scan = new AccessPoints(aps, 0);
+            for(int k : new int[] {1, 5, ROWS + 1})
+                assertSameResult(map.findNearestK(scan, k, null), loaded.findNearestK(scan, k, null));
+        }
+    }
+
+    /**
+     * Writes the map, overwrites the file at offset with little endian ints and expects the
+     * builder to reject it.
+     */
+    private static void assertRejected(MagneticFingerprintMap map, long offset, int... ints)
+            throws Exception {
+        File file = writeMagnetic(map);
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            for(int value : ints)
+                raf.writeInt(Integer.reverseBytes(value));
+        }
+        assertRejected(file);
+    }
+
+    private static void assertRejected(MagneticFingerprintMap map, long offset, byte value)
+            throws Exception {
+        File file = writeMagnetic(map);
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.writeByte(value);
+        }
+        assertRejected(file);
+    }
+
+    private static void assertRejected(File file) throws Exception {
+        try {
+            new MagneticFingerprintMap.Builder().build(file);
+            fail("Loaded a corrupted tree");
+        } catch(IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupted radio map"));
+        }
+    }
+
+    private static int readPermutation(File file, int i) throws Exception {
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(PERMUTATION_OFFSET + 4L * i);
+            return Integer.reverseBytes(raf.readInt());
+        }
+    }
+
+    @Test
+    public void magnetic_corruptedTree_isRejected() throws Exception {
+        MagneticFingerprintMap map = randomMagneticMap(new Random(3));
+        File file = writeMagnetic(map);
+        int root = ROWS / 2;
+
+        // Out of range, repeated row
+        assertRejected(map, PERMUTATION_OFFSET, ROWS);
+        assertRejected(map, PERMUTATION_OFFSET, readPermutation(file, 1));
+
+        // The root's splitting point swapped with its left neighbour: still a permutation, but
+        // the left side now has a greater value
+        assertRejected(map, PERMUTATION_OFFSET + 4L * (root - 1),
+                readPermutation(file, root), readPermutation(file, root - 1));
+
+        // Invalid axis at the root, another valid axis at the root
+        assertRejected(map, AXES_OFFSET + root, (byte) 3);
+        int axis;
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(AXES_OFFSET + root);
+            axis = raf.readByte();
+        }
+        assertRejected(map, AXES_OFFSET + root, (byte) ((axis + 1) % 3));
+    }
+}
@@ -0,0 +1,158 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.SingleAccessPoint;
+
+import static it.cnr.isti.wnlab.indoornavigation.fingerprint.MagneticFingerprintMapTest.WEST;
+import static it.cnr.isti.wnlab.indoornavigation.fingerprint.MagneticFingerprintMapTest.assertSameNearest;
+import static it.cnr.isti.wnlab.indoornavigation.fingerprint.MagneticFingerprintMapTest.linearScan;
+import static org.junit.Assert.*;
+
+/**
+ * K-NN through the inverted BSSID index against the linear scan, on seeded random maps.
+ * Rows hear a few APs out of ACCESS_POINTS, at coarse levels; scans may hear APs that aren't
+ * in the map, or none of its APs at all.
+ */
+public class WifiFingerprintMapTest {
+
+    private static final int ROWS = 400;
+    private static final int ACCESS_POINTS = 30;
+    private static final int QUERIES = 200;
+    private static final int[] KS = {1, 3, 10, ROWS + 5};
+
+    private static String bssid(int a) {
+        return "00:00:00:00:00:" + (a < 16 ? "0" : "") + Integer.toHexString(a);
+    }
+
+    private static int rssi(Random random) {
+        return -40 - 10 * random.nextInt(6);
+    }
+
+    private static WifiFingerprintMap randomMap(Random random) throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for(int i = 0; i < ROWS; i++) {
+            csv.append(random.nextInt(20)).append(',').append(random.nextInt(20));
+            for(int a = 0; a < ACCESS_POINTS; a++)
+                if(random.nextInt(5) == 0)
+                    csv.append(',').append(bssid(a)).append(',').append(rssi(random));
+            csv.append('\n');
+        }
+        return new WifiFingerprintMap.Builder().build(new StringReader(csv.toString()));
+    }
+
+    /**
+     * @return A scan of APs in [0, ACCESS_POINTS + 5): the last five aren't in the map.
+     */
+    private static AccessPoints randomScan(Random random) {
+        List<SingleAccessPoint> aps = new ArrayList<>();
+        for(int a = 0; a < ACCESS_POINTS + 5; a++)
+            if(random.nextInt(4) == 0)
+                aps.add(new SingleAccessPoint(bssid(a), rssi(random)));
+        return new AccessPoints(aps, 0);
+    }
+
+    @Test
+    public void findNearestK_matchesLinearScan() throws Exception {
+        Random random = new Random(42);
+        WifiFingerprintMap map = randomMap(random);
+        for(int q = 0; q < QUERIES; q++) {
+            AccessPoints scan = randomScan(random);
+            for(int k : KS)
+                assertSameNearest(linearScan(map.getDistancedPoints(scan, null), k),
+                        map.findNearestK(scan, k, null));
+        }
+    }
+
+    @Test
+    public void findNearestK_withFilter_matchesLinearScan() throws Exception {
+        Random random = new Random(7);
+        WifiFingerprintMap map = randomMap(random);
+        for(int q = 0; q < QUERIES; q++) {
+            AccessPoints scan = randomScan(random);
+            for(int k : KS)
+                assertSameNearest(linearScan(map.getDistancedPoints(scan, WEST), k),
+                        map.findNearestK(scan, k, WEST));
+        }
+    }
+
+    @Test
+    public void findNearestK_withUnknownAccessPointsOnly() throws Exception {
+        Random random = new Random(3);
+        WifiFingerprintMap map = randomMap(random);
+        List<SingleAccessPoint> aps = new ArrayList<>();
+        aps.add(new SingleAccessPoint(bssid(ACCESS_POINTS + 1), -50));
+        aps.add(new SingleAccessPoint(bssid(ACCESS_POINTS + 2), -70));
+        AccessPoints scan = new AccessPoints(aps, 0);
+        for(int k : KS)
+            assertSameNearest(linearScan(map.getDistancedPoints(scan, null), k),
+                    map.findNearestK(scan, k, null));
+    }
+
+    @Test
+    public void duplicates_keepTheStrongestRssi() throws Exception {
+        // Repeated BSSIDs in rows and in scans count as their strongest reading
+        String rows = "0,0,a,-40,b,-60\n1,0,a,-80,b,-50\n2,0,c,-70,a,-90\n";
+        String duplicates = "0,0,a,-70,b,-60,a,-40\n1,0,a,-80,b,-50,b,-90\n2,0,c,-70,a,-90,c,-75\n";
+        WifiFingerprintMap map = new WifiFingerprintMap.Builder().build(new StringReader(rows));
+        WifiFingerprintMap withDuplicates =
+                new WifiFingerprintMap.Builder().build(new StringReader(duplicates));
+
+        List<SingleAccessPoint> aps = new ArrayList<>();
+        aps.add(new SingleAccessPoint("a", -45));
+        aps.add(new SingleAccessPoint("c", -70));
+        aps.add(new SingleAccessPoint("d", -60));
+        AccessPoints scan = new AccessPoints(aps, 0);
+        aps.add(new SingleAccessPoint("a", -85));
+        aps.add(new SingleAccessPoint("c", -72));
+        AccessPoints scanWithDuplicates = new AccessPoints(aps, 0);
+
+        List<PositionDistance<XYPosition>> expected = map.findNearestK(scan, 3, null);
+        List<PositionDistance<XYPosition>> actual =
+                withDuplicates.findNearestK(scanWithDuplicates, 3, null);
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).position.x, actual.get(i).position.x, 0.f);
+            assertEquals(expected.get(i).distance, actual.get(i).distance, 0.f);
+        }
+        assertSameNearest(linearScan(withDuplicates.getDistancedPoints(scanWithDuplicates, null), 3),
+                actual);
+    }
+
+    @Test
+    public void findNearestK_isRepeatable() throws Exception {
+        // Scoring buffers are reused: a query must not leave anything behind for the next one
+        Random random = new Random(11);
+        WifiFingerprintMap map = randomMap(random);
+        AccessPoints scan = randomScan(random);
+        List<PositionDistance<XYPosition>> first = map.findNearestK(scan, 10, null);
+        map.findNearestK(randomScan(random), 10, null);
+        assertSameNearest(first, map.findNearestK(scan, 10, null));
+    }
+
+    @Test
+    public void findNearestK_cancelled_leavesNothingBehind() throws Exception {
+        Random random = new Random(13);
+        WifiFingerprintMap map = randomMap(random);
+        AccessPoints scan = randomScan(random);
+        List<PositionDistance<XYPosition>> first = map.findNearestK(scan, 10, null);
+        // Stopped halfway through the postings
+        FingerprintMap.Cancellation halfway = new FingerprintMap.Cancellation() {
+            int checks = 0;
+
+            @Override
+            public boolean isCancelled() {
+                return ++checks > 2;
+            }
+        };
+        assertNull(map.findNearestK(randomScan(random), 10, null, halfway));
+        assertSameNearest(first, map.findNearestK(scan, 10, null));
+    }
+}
@@ -0,0 +1,109 @@
+package it.cnr.isti.wnlab.indoornavigation.map;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+
+import static it.cnr.isti.wnlab.indoornavigation.map.OccupancyGridTest.RESOLUTIONS;
+import static it.cnr.isti.wnlab.indoornavigation.map.OccupancyGridTest.floor;
+import static it.cnr.isti.wnlab.indoornavigation.map.OccupancyGridTest.isValidInRooms;
+import static it.cnr.isti.wnlab.indoornavigation.map.OccupancyGridTest.randomRooms;
+import static org.junit.Assert.*;
+
+/**
+ * Snapping positions to seeded random floors: the result must be valid for the rooms, and not
+ * much farther than the nearest valid point.
+ */
+public class DistanceTransformTest {
+
+    private static final int LAYOUTS = 20;
+    private static final int POINTS = 2000;
+
+    /**
+     * @return The distance from (x,y) to the nearest point of the closures of the rooms whose
+     * sides are at least minSide, +infinity if there are none.
+     */
+    private static double nearestDistance(RoomMap[] rooms, float minSide, float x, float y) {
+        double best = Double.POSITIVE_INFINITY;
+        for(RoomMap room : rooms) {
+            float[] b = room.getBounds();
+            if(b[2] - b[0] < minSide || b[3] - b[1] < minSide)
+                continue;
+            double dx = Math.max(Math.max(b[0] - x, x - b[2]), 0.);
+            double dy = Math.max(Math.max(b[1] - y, y - b[3]), 0.);
+            best = Math.min(best, Math.sqrt(dx * dx + dy * dy));
+        }
+        return best;
+    }
+
+    private static boolean hasInsideCells(OccupancyGrid grid) {
+        for(int r = 0; r < grid.getRows(); r++)
+            for(int c = 0; c < grid.getColumns(); c++)
+                if(grid.getCell(c, r) == RoomMap.INSIDE)
+                    return true;
+        return false;
+    }
+
+    @Test
+    public void nearestValid_isValid() throws Exception {
+        Random random = new Random(42);
+        for(int l = 0; l < LAYOUTS; l++) {
+            RoomMap[] rooms = randomRooms(random);
+            for(float resolution : RESOLUTIONS) {
+                FloorMap floor = floor(rooms, resolution);
+                boolean snaps = hasInsideCells(floor.getOccupancyGrid());
+                for(int p = 0; p < POINTS; p++) {
+                    // Also outside the grid
+                    float x = random.nextFloat() * 30.f - 5.f;
+                    float y = random.nextFloat() * 30.f - 5.f;
+                    XYPosition nearest = floor.nearestValid(x, y);
+                    if(isValidInRooms(rooms, x, y) || !snaps) {
+                        // Valid positions, and all of them if there is no valid cell, stay
+                        assertEquals(x, nearest.x, 0.f);
+                        assertEquals(y, nearest.y, 0.f);
+                        continue;
+                    }
+                    assertTrue("Snapped " + x + "," + y + " to " + nearest,
+                            isValidInRooms(rooms, nearest.x, nearest.y));
+                    assertTrue(floor.isValid(nearest.x, nearest.y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void nearestValid_isNearTheRooms() throws Exception {
+        Random random = new Random(7);
+        for(int l = 0; l < LAYOUTS; l++) {
+            RoomMap[] rooms = randomRooms(random);
+            for(float resolution : RESOLUTIONS) {
+                FloorMap floor = floor(rooms, resolution);
+                if(!hasInsideCells(floor.getOccupancyGrid()))
+                    continue;
+                for(int p = 0; p < POINTS; p++) {
+                    float x = random.nextFloat() * 30.f - 5.f;
+                    float y = random.nextFloat() * 30.f - 5.f;
+                    XYPosition nearest = floor.getDistanceTransform().nearestValid(x, y);
+                    double dx = nearest.x - x, dy = nearest.y - y;
+                    // Every point of a room at least 3 cells wide is within a couple of cells
+                    // of one of its INSIDE cells; thinner rooms may have none
+                    double bound = nearestDistance(rooms, 3.f * resolution, x, y) + 3. * resolution;
+                    assertTrue("Snapped " + x + "," + y + " to " + nearest,
+                            Math.sqrt(dx * dx + dy * dy) <= bound);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void nearestValid_withoutValidCells() throws Exception {
+        // Thinner than a cell: no INSIDE cell to snap to
+        RoomMap[] rooms = {RectangleRoomMap.fromCorners(1.f, 1.f, 1.05f, 3.f)};
+        DistanceTransform transform = new DistanceTransform(floor(rooms, .25f).getOccupancyGrid());
+        XYPosition nearest = transform.nearestValid(5.f, 5.f);
+        assertEquals(5.f, nearest.x, 0.f);
+        assertEquals(5.f, nearest.y, 0.f);
+    }
+}
@@ -0,0 +1,147 @@
+package it.cnr.isti.wnlab.indoornavigation.map;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Occupancy grids of seeded random floors against RoomMap.isValid: random points, points on the
+ * rooms' edges and the corners of every cell.
+ */
+public class OccupancyGridTest {
+
+    static final float[] RESOLUTIONS = {.1f, .25f, 1.f};
+    private static final int LAYOUTS = 20;
+    private static final int POINTS = 5000;
+
+    /**
+     * @return Up to 12 overlapping rectangles in [0,20]x[0,20], with arbitrary float corners;
+     * some are thinner than a cell.
+     */
+    static RoomMap[] randomRooms(Random random) {
+        RoomMap[] rooms = new RoomMap[1 + random.nextInt(12)];
+        for(int i = 0; i < rooms.length; i++) {
+            float x = random.nextFloat() * 15.f;
+            float y = random.nextFloat() * 15.f;
+            float width = (random.nextInt(6) == 0 ? .05f : .5f + random.nextFloat() * 5.f);
+            float height = .05f + random.nextFloat() * 5.f;
+            rooms[i] = RectangleRoomMap.fromCorners(x, y, x + width, y + height);
+        }
+        return rooms;
+    }
+
+    static FloorMap floor(RoomMap[] rooms, float resolution) {
+        FloorMap floor = new FloorMap(0, rooms) {};
+        floor.setOccupancyResolution(resolution);
+        return floor;
+    }
+
+    static boolean isValidInRooms(RoomMap[] rooms, float x, float y) {
+        for(RoomMap room : rooms)
+            if(room.isValid(x, y))
+                return true;
+        return false;
+    }
+
+    private static void checkPoint(RoomMap[] rooms, FloorMap floor, float x, float y) {
+        boolean valid = isValidInRooms(rooms, x, y);
+        int cell = floor.getOccupancyGrid().classify(x, y);
+        if(cell == RoomMap.INSIDE)
+            assertTrue("INSIDE but not valid: " + x + "," + y, valid);
+        else if(cell == RoomMap.OUTSIDE)
+            assertFalse("OUTSIDE but valid: " + x + "," + y, valid);
+        assertEquals("isValid(" + x + "," + y + ")", valid, floor.isValid(x, y));
+    }
+
+    @Test
+    public void classify_agreesWithRooms() throws Exception {
+        Random random = new Random(42);
+        for(int l = 0; l < LAYOUTS; l++) {
+            RoomMap[] rooms = randomRooms(random);
+            for(float resolution : RESOLUTIONS) {
+                FloorMap floor = floor(rooms, resolution);
+                assertNotNull(floor.getOccupancyGrid());
+                for(int p = 0; p < POINTS; p++)
+                    checkPoint(rooms, floor, random.nextFloat() * 24.f - 2.f, random.nextFloat() * 24.f - 2.f);
+            }
+        }
+    }
+
+    @Test
+    public void classify_agreesWithRoomsOnEdges() throws Exception {
+        Random random = new Random(7);
+        for(int l = 0; l < LAYOUTS; l++) {
+            RoomMap[] rooms = randomRooms(random);
+            for(float resolution : RESOLUTIONS) {
+                FloorMap floor = floor(rooms, resolution);
+                for(RoomMap room : rooms) {
+                    float[] b = room.getBounds();
+                    float[] xs = {b[0], Math.nextUp(b[0]), Math.nextAfter(b[0], -1.),
+                            b[2], Math.nextAfter(b[2], -1.), Math.nextUp(b[2])};
+                    float[] ys = {b[1], Math.nextUp(b[1]), Math.nextAfter(b[1], -1.),
+                            b[3], Math.nextAfter(b[3], -1.), Math.nextUp(b[3])};
+                    for(float x : xs)
+                        for(float y : ys)
+                            checkPoint(rooms, floor, x, y);
+                    for(int p = 0; p < 20; p++) {
+                        float x = b[0] + random.nextFloat() * (b[2] - b[0]);
+                        float y = b[1] + random.nextFloat() * (b[3] - b[1]);
+                        for(float edge : xs)
+                            checkPoint(rooms, floor, edge, y);
+                        for(float edge : ys)
+                            checkPoint(rooms, floor, x, edge);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cells_areAllValidOrAllInvalid() throws Exception {
+        // Corners included: DistanceTransform clamps positions to the closed INSIDE cells
+        Random random = new Random(3);
+        for(int l = 0; l < LAYOUTS; l++) {
+            RoomMap[] rooms = randomRooms(random);
+            for(float resolution : RESOLUTIONS) {
+                OccupancyGrid grid = floor(rooms, resolution).getOccupancyGrid();
+                for(int r = 0; r < grid.getRows(); r++) {
+                    for(int c = 0; c < grid.getColumns(); c++) {
+                        int cell = grid.getCell(c, r);
+                        if(cell == RoomMap.PARTIAL)
+                            continue;
+                        float minX = grid.getOriginX() + c * resolution;
+                        float minY = grid.getOriginY() + r * resolution;
+                        float maxX = grid.getOriginX() + (c + 1) * resolution;
+                        float maxY = grid.getOriginY() + (r + 1) * resolution;
+                        float[][] points = {{minX, minY}, {maxX, minY}, {minX, maxY}, {maxX, maxY},
+                                {(minX + maxX) / 2, (minY + maxY) / 2}};
+                        for(float[] point : points)
+                            assertEquals("Cell " + c + "," + r, cell == RoomMap.INSIDE,
+                                    isValidInRooms(rooms, point[0], point[1]));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void build_withoutBounds() throws Exception {
+        // A room that doesn't know its shape: no grid, every position is checked against it
+        RoomMap circle = new RoomMap() {
+            @Override
+            public boolean isValid(float x, float y) {
+                return x * x + y * y < 1.f;
+            }
+        };
+        RoomMap[] rooms = {RectangleRoomMap.fromCorners(0.f, 0.f, 2.f, 2.f), circle};
+        assertNull(OccupancyGrid.build(Arrays.asList(rooms), .1f));
+        FloorMap floor = floor(rooms, .1f);
+        assertNull(floor.getOccupancyGrid());
+        assertTrue(floor.isValid(-.5f, -.5f));
+        assertTrue(floor.isValid(1.5f, 1.5f));
+        assertFalse(floor.isValid(-.5f, 1.5f));
+    }
+}
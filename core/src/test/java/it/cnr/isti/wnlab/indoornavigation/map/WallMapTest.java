@@ -0,0 +1,159 @@
+package it.cnr.isti.wnlab.indoornavigation.map;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static it.cnr.isti.wnlab.indoornavigation.map.OccupancyGridTest.randomRooms;
+import static org.junit.Assert.*;
+
+/**
+ * crosses() against a brute-force check of the segment with every wall, on seeded random
+ * layouts: random segments, segments through cell corners, and segments touching walls, ending
+ * on them or running along them.
+ */
+public class WallMapTest {
+
+    private static final float[] CELL_SIZES = {.25f, 1.f, 3.f};
+    private static final int LAYOUTS = 20;
+    private static final int SEGMENTS = 3000;
+
+    /**
+     * Same predicate as WallMap: the segments cross at a point inside both of them.
+     */
+    private static boolean properlyIntersect(
+            double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+        double o1 = orientation(ax, ay, bx, by, cx, cy);
+        double o2 = orientation(ax, ay, bx, by, dx, dy);
+        double o3 = orientation(cx, cy, dx, dy, ax, ay);
+        double o4 = orientation(cx, cy, dx, dy, bx, by);
+        return o1 * o2 < 0. && o3 * o4 < 0.;
+    }
+
+    private static double orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    private static boolean bruteForce(float[] walls, float x0, float y0, float x1, float y1) {
+        for(int w = 0; w < walls.length; w += 4)
+            if(properlyIntersect(x0, y0, x1, y1, walls[w], walls[w + 1], walls[w + 2], walls[w + 3]))
+                return true;
+        return false;
+    }
+
+    /**
+     * @return Up to 40 walls in [0,20]x[0,20]: half axis-aligned, some on a grid of whole meters.
+     */
+    private static float[] randomWalls(Random random) {
+        float[] walls = new float[4 * (1 + random.nextInt(40))];
+        for(int w = 0; w < walls.length; w += 4) {
+            float x = random.nextFloat() * 20.f, y = random.nextFloat() * 20.f;
+            float length = random.nextFloat() * 8.f;
+            switch(random.nextInt(4)) {
+                case 0:
+                    walls[w] = x; walls[w + 1] = y; walls[w + 2] = x + length; walls[w + 3] = y;
+                    break;
+                case 1:
+                    walls[w] = x; walls[w + 1] = y; walls[w + 2] = x; walls[w + 3] = y + length;
+                    break;
+                case 2:
+                    x = (int) x; y = (int) y;
+                    walls[w] = x; walls[w + 1] = y; walls[w + 2] = x + (int) length; walls[w + 3] = y;
+                    break;
+                default:
+                    walls[w] = x; walls[w + 1] = y;
+                    walls[w + 2] = random.nextFloat() * 20.f; walls[w + 3] = random.nextFloat() * 20.f;
+            }
+        }
+        return walls;
+    }
+
+    /**
+     * @return A point of the wall: an end, or a random point inside it.
+     */
+    private static float[] pointOn(float[] walls, int w, Random random) {
+        float t = (random.nextBoolean() ? (random.nextBoolean() ? 0.f : 1.f) : random.nextFloat());
+        return new float[] {walls[w] + t * (walls[w + 2] - walls[w]),
+                walls[w + 1] + t * (walls[w + 3] - walls[w + 1])};
+    }
+
+    private static void checkSegments(WallMap map, float[] walls, float cellSize, Random random) {
+        int n = walls.length / 4;
+        for(int s = 0; s < SEGMENTS; s++) {
+            float x0, y0, x1, y1;
+            int w = 4 * random.nextInt(Math.max(n, 1));
+            switch(n == 0 ? 0 : random.nextInt(5)) {
+                case 0:
+                    // Random, also outside the walls' bounds
+                    x0 = random.nextFloat() * 30.f - 5.f; y0 = random.nextFloat() * 30.f - 5.f;
+                    x1 = random.nextFloat() * 30.f - 5.f; y1 = random.nextFloat() * 30.f - 5.f;
+                    break;
+                case 1: {
+                    // Between cell corners: diagonals go exactly through corners
+                    x0 = random.nextInt(24) * cellSize - 2.f; y0 = random.nextInt(24) * cellSize - 2.f;
+                    int d = random.nextInt(6) - 3;
+                    x1 = x0 + d * cellSize;
+                    y1 = y0 + (random.nextBoolean() ? d : -d) * cellSize;
+                    break;
+                }
+                case 2: {
+                    // From a point of a wall, outwards or across
+                    float[] p = pointOn(walls, w, random);
+                    x0 = p[0]; y0 = p[1];
+                    x1 = x0 + random.nextFloat() * 6.f - 3.f; y1 = y0 + random.nextFloat() * 6.f - 3.f;
+                    if(random.nextBoolean()) {
+                        float tx = x0, ty = y0;
+                        x0 = x1; y0 = y1; x1 = tx; y1 = ty;
+                    }
+                    break;
+                }
+                case 3: {
+                    // Along a wall, possibly past its ends
+                    float a = random.nextFloat() * 1.4f - .2f, b = random.nextFloat() * 1.4f - .2f;
+                    float dx = walls[w + 2] - walls[w], dy = walls[w + 3] - walls[w + 1];
+                    x0 = walls[w] + a * dx; y0 = walls[w + 1] + a * dy;
+                    x1 = walls[w] + b * dx; y1 = walls[w + 1] + b * dy;
+                    break;
+                }
+                default: {
+                    // Through two walls' points
+                    float[] p = pointOn(walls, w, random);
+                    float[] q = pointOn(walls, 4 * random.nextInt(n), random);
+                    x0 = p[0]; y0 = p[1]; x1 = q[0]; y1 = q[1];
+                }
+            }
+            assertEquals("Segment " + x0 + "," + y0 + " " + x1 + "," + y1,
+                    bruteForce(walls, x0, y0, x1, y1), map.crosses(x0, y0, x1, y1));
+        }
+    }
+
+    @Test
+    public void crosses_matchesBruteForce() throws Exception {
+        Random random = new Random(42);
+        for(int l = 0; l < LAYOUTS; l++) {
+            float[] walls = randomWalls(random);
+            for(float cellSize : CELL_SIZES)
+                checkSegments(new WallMap(walls, cellSize), walls, cellSize, random);
+        }
+    }
+
+    @Test
+    public void crosses_matchesBruteForce_onRoomWalls() throws Exception {
+        Random random = new Random(7);
+        for(int l = 0; l < LAYOUTS; l++) {
+            RoomMap[] rooms = randomRooms(random);
+            for(float cellSize : CELL_SIZES) {
+                WallMap map = WallMap.fromRooms(Arrays.asList(rooms), cellSize);
+                checkSegments(map, map.getWalls(), cellSize, random);
+            }
+        }
+    }
+
+    @Test
+    public void crosses_withoutWalls() throws Exception {
+        WallMap map = new WallMap(new float[0], WallMap.DEFAULT_CELL_SIZE);
+        assertEquals(0, map.size());
+        assertFalse(map.crosses(-1.f, -1.f, 1.f, 1.f));
+    }
+}
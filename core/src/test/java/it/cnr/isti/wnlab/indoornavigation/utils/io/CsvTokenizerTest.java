@@ -0,0 +1,143 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.io;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * nextFloat against Float.parseFloat on seeded random decimals, exponents and long mantissas,
+ * and the position reported for malformed fields.
+ */
+public class CsvTokenizerTest {
+
+    private static final int NUMBERS = 100000;
+
+    /**
+     * Parses the numbers as one record, with a small buffer so that fields straddle refills.
+     */
+    private static void assertSameAsParseFloat(String[] numbers) throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for(int i = 0; i < numbers.length; i++)
+            csv.append(i > 0 ? "," : "").append(numbers[i]);
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(csv.toString()), 16);
+        assertTrue(tokenizer.nextRecord());
+        for(String number : numbers)
+            assertEquals(number, Float.floatToIntBits(Float.parseFloat(number)),
+                    Float.floatToIntBits(tokenizer.nextFloat()));
+        assertFalse(tokenizer.hasNextField());
+    }
+
+    private static String digits(Random random, int n) {
+        StringBuilder digits = new StringBuilder();
+        for(int i = 0; i < n; i++)
+            digits.append((char) ('0' + random.nextInt(10)));
+        return digits.toString();
+    }
+
+    /**
+     * @return A random decimal with optional sign, fraction and exponent.
+     */
+    private static String randomDecimal(Random random, int maxDigits, boolean exponent) {
+        StringBuilder number = new StringBuilder();
+        int sign = random.nextInt(3);
+        number.append(sign == 0 ? "-" : (sign == 1 ? "+" : ""));
+        int integer = random.nextInt(maxDigits);
+        number.append(digits(random, integer));
+        if(integer == 0 || random.nextBoolean())
+            number.append('.').append(digits(random, 1 + random.nextInt(maxDigits)));
+        if(exponent)
+            number.append(random.nextBoolean() ? 'e' : 'E')
+                    .append(random.nextInt(3) == 0 ? "-" : (random.nextBoolean() ? "+" : ""))
+                    .append(random.nextInt(50));
+        return number.toString();
+    }
+
+    @Test
+    public void nextFloat_matchesParseFloat() throws Exception {
+        Random random = new Random(42);
+        String[] numbers = new String[NUMBERS];
+        for(int i = 0; i < NUMBERS; i++) {
+            if(i % 2 == 0)
+                numbers[i] = randomDecimal(random, 8, false);
+            else {
+                // Shortest representations of random floats, NaN excluded
+                float f;
+                do
+                    f = Float.intBitsToFloat(random.nextInt());
+                while(Float.isNaN(f));
+                numbers[i] = Float.toString(f);
+            }
+        }
+        assertSameAsParseFloat(numbers);
+    }
+
+    @Test
+    public void nextFloat_withExponents() throws Exception {
+        assertSameAsParseFloat(new String[] {"1e10", "1.5E-3", "-2e+5", "0e5", "-0.0e-3",
+                "1e22", "1e23", "7e-22", "7e-23", "3.4028235e38", "3.4028236e38", "1e39",
+                "1.4e-45", "1e-46", "1.17549435E-38", "1.1754942E-38", "123e-20"});
+        Random random = new Random(7);
+        String[] numbers = new String[NUMBERS];
+        for(int i = 0; i < NUMBERS; i++)
+            numbers[i] = randomDecimal(random, 8, true);
+        assertSameAsParseFloat(numbers);
+    }
+
+    @Test
+    public void nextFloat_withMoreThan15Digits() throws Exception {
+        assertSameAsParseFloat(new String[] {"0.1234567890123456789", "12345678901234567890",
+                "1.00000000000000000001", "0.000000000000000000000000000000000000000000001",
+                "9999999999999999", "16777217.000000000000001", "16777217"});
+        Random random = new Random(3);
+        String[] numbers = new String[NUMBERS];
+        for(int i = 0; i < NUMBERS; i++)
+            numbers[i] = randomDecimal(random, 25, i % 2 == 0);
+        assertSameAsParseFloat(numbers);
+    }
+
+    /**
+     * Reads "1.5,2.5\n\n3,FIELD,4" and expects FIELD to be rejected at line 3, column 3.
+     */
+    private static void assertMalformed(String field) throws Exception {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("1.5,2.5\n\n3," + field + ",4"), 16);
+        assertTrue(tokenizer.nextRecord());
+        assertEquals(1.5f, tokenizer.nextFloat(), 0.f);
+        assertTrue(tokenizer.nextRecord());
+        assertEquals(3.f, tokenizer.nextFloat(), 0.f);
+        try {
+            tokenizer.nextFloat();
+            fail("Parsed \"" + field + "\"");
+        } catch(CsvFormatException e) {
+            assertEquals(3, e.getLine());
+            assertEquals(3, e.getColumn());
+        }
+    }
+
+    @Test
+    public void nextFloat_malformed_reportsLineAndColumn() throws Exception {
+        String[] fields = {"", "abc", "-", "+", ".", "1e", "1e+", "1.2.3", "1.5e3x", "--1", "e5",
+                "0x", "12345678901234567890a"};
+        for(String field : fields)
+            assertMalformed(field);
+    }
+
+    @Test
+    public void nextFloat_missingField() throws Exception {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("1\n2,3"));
+        assertTrue(tokenizer.nextRecord());
+        assertEquals(1.f, tokenizer.nextFloat(), 0.f);
+        try {
+            tokenizer.nextFloat();
+            fail("Parsed a missing field");
+        } catch(CsvFormatException e) {
+            assertEquals(1, e.getLine());
+        }
+        assertTrue(tokenizer.nextRecord());
+        assertEquals(2.f, tokenizer.nextFloat(), 0.f);
+        assertEquals(3.f, tokenizer.nextFloat(), 0.f);
+        assertFalse(tokenizer.nextRecord());
+    }
+}
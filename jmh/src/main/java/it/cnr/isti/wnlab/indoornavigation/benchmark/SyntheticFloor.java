@@ -0,0 +1,196 @@
+package it.cnr.isti.wnlab.indoornavigation.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.MagneticFingerprintMap;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.WifiFingerprintMap;
+import it.cnr.isti.wnlab.indoornavigation.map.FloorMap;
+import it.cnr.isti.wnlab.indoornavigation.map.RectangleRoomMap;
+import it.cnr.isti.wnlab.indoornavigation.map.RoomMap;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.SingleAccessPoint;
+
+/**
+ * A square floor of configurable side for the benchmarks: horizontal corridors every BAND
+ * meters, joined by a vertical one on the west side, with a row of rooms (open on the
+ * corridor below) between them.
+ * Wifi and magnetic fingerprints are taken every meter in the corridors and rooms; access
+ * points are on a grid of ACCESS_POINT_SPACING meters and are heard up to a path loss of
+ * MIN_HEARD_RSSI, so bigger floors have sparser rows.
+ */
+public class SyntheticFloor {
+
+    public static final float CORRIDOR_WIDTH = 2.f;
+    public static final float ROOM_SIDE = 5.f;
+    public static final float BAND = CORRIDOR_WIDTH + ROOM_SIDE;
+    public static final float ACCESS_POINT_SPACING = 10.f;
+    public static final int MIN_HEARD_RSSI = -90;
+
+    private final float side;
+    private final float[] apX;
+    private final float[] apY;
+    private final FloorMap floorMap;
+    private final WifiFingerprintMap wifiMap;
+    private final MagneticFingerprintMap magneticMap;
+
+    /**
+     * @param side Side of the floor, in meters.
+     */
+    public SyntheticFloor(float side) throws IOException {
+        this.side = side;
+
+        // Access points
+        int perSide = Math.max(1, (int) (side / ACCESS_POINT_SPACING));
+        apX = new float[perSide * perSide];
+        apY = new float[perSide * perSide];
+        for(int i = 0; i < perSide; i++)
+            for(int j = 0; j < perSide; j++) {
+                apX[i * perSide + j] = (i + .5f) * ACCESS_POINT_SPACING;
+                apY[i * perSide + j] = (j + .5f) * ACCESS_POINT_SPACING;
+            }
+
+        floorMap = createFloor();
+        wifiMap = createWifiMap();
+        magneticMap = createMagneticMap();
+    }
+
+    public float getSide() {
+        return side;
+    }
+
+    public FloorMap getFloorMap() {
+        return floorMap;
+    }
+
+    public WifiFingerprintMap getWifiMap() {
+        return wifiMap;
+    }
+
+    public MagneticFingerprintMap getMagneticMap() {
+        return magneticMap;
+    }
+
+    /**
+     * @return A position in the middle of the first corridor, west side.
+     */
+    public XYPosition getStart() {
+        return new XYPosition(CORRIDOR_WIDTH + 1.f, CORRIDOR_WIDTH / 2);
+    }
+
+    /**
+     * @return A random valid position.
+     */
+    public XYPosition randomPosition(Random random) {
+        while(true) {
+            float x = random.nextFloat() * side;
+            float y = random.nextFloat() * side;
+            if(floorMap.isValid(x, y))
+                return new XYPosition(x, y);
+        }
+    }
+
+    /**
+     * @return A scan in (x,y), with gaussian noise of 3dB on every access point.
+     */
+    public AccessPoints scan(float x, float y, Random random, long time) {
+        List<SingleAccessPoint> aps = new ArrayList<>();
+        for(int a = 0; a < apX.length; a++) {
+            int rssi = rssi(x, y, a) + (int) Math.round(random.nextGaussian() * 3.);
+            if(rssi >= MIN_HEARD_RSSI)
+                aps.add(new SingleAccessPoint(bssid(a), rssi));
+        }
+        return new AccessPoints(aps, time);
+    }
+
+    /**
+     * @return The magnetic field in (x,y), with gaussian noise of 1uT on every component.
+     */
+    public MagneticField magneticField(float x, float y, Random random, long time) {
+        return new MagneticField(
+                fieldX(x, y) + (float) random.nextGaussian(),
+                fieldY(x, y) + (float) random.nextGaussian(),
+                fieldZ(x, y) + (float) random.nextGaussian(),
+                3.f, time);
+    }
+
+    /*
+     * Floor
+     */
+
+    private FloorMap createFloor() {
+        List<RoomMap> rooms = new ArrayList<>();
+        // West corridor
+        rooms.add(RectangleRoomMap.fromCorners(0.f, 0.f, CORRIDOR_WIDTH, side));
+        for(float y = 0.f; y + CORRIDOR_WIDTH <= side; y += BAND) {
+            // Corridor of the band, then its rooms
+            rooms.add(RectangleRoomMap.fromCorners(CORRIDOR_WIDTH, y, side, y + CORRIDOR_WIDTH));
+            float top = Math.min(side, y + BAND);
+            for(float x = CORRIDOR_WIDTH; x + ROOM_SIDE <= side && y + CORRIDOR_WIDTH < top; x += ROOM_SIDE)
+                rooms.add(RectangleRoomMap.fromCorners(x, y + CORRIDOR_WIDTH, x + ROOM_SIDE, top));
+        }
+        return new FloorMap(0, rooms.toArray(new RoomMap[rooms.size()])) {};
+    }
+
+    /*
+     * Fingerprints
+     */
+
+    private static String bssid(int a) {
+        return "ap" + a;
+    }
+
+    private int rssi(float x, float y, int a) {
+        float dx = x - apX[a], dy = y - apY[a];
+        double d = Math.max(1., Math.sqrt(dx * dx + dy * dy));
+        return (int) Math.round(-40. - 40. * Math.log10(d));
+    }
+
+    private WifiFingerprintMap createWifiMap() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for(float x = .5f; x < side; x += 1.f)
+            for(float y = .5f; y < side; y += 1.f) {
+                if(!floorMap.isValid(x, y))
+                    continue;
+                csv.append(x).append(',').append(y);
+                for(int a = 0; a < apX.length; a++) {
+                    int rssi = rssi(x, y, a);
+                    if(rssi >= MIN_HEARD_RSSI)
+                        csv.append(',').append(bssid(a)).append(',').append(rssi);
+                }
+                csv.append('\n');
+            }
+        return new WifiFingerprintMap.Builder().build(new StringReader(csv.toString()));
+    }
+
+    private static float fieldX(float x, float y) {
+        return (float) (20. + 10. * Math.sin(.9 * x) * Math.cos(.4 * y));
+    }
+
+    private static float fieldY(float x, float y) {
+        return (float) (-5. + 8. * Math.cos(.7 * x + .3 * y));
+    }
+
+    private static float fieldZ(float x, float y) {
+        return (float) (40. + 6. * Math.sin(.5 * y));
+    }
+
+    private MagneticFingerprintMap createMagneticMap() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for(float x = .5f; x < side; x += 1.f)
+            for(float y = .5f; y < side; y += 1.f) {
+                if(!floorMap.isValid(x, y))
+                    continue;
+                csv.append(x).append(',').append(y).append(',')
+                        .append(fieldX(x, y)).append(',')
+                        .append(fieldY(x, y)).append(',')
+                        .append(fieldZ(x, y)).append('\n');
+            }
+        return new MagneticFingerprintMap.Builder().build(new StringReader(csv.toString()));
+    }
+}
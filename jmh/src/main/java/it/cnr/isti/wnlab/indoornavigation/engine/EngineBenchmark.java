@@ -0,0 +1,188 @@
+package it.cnr.isti.wnlab.indoornavigation.engine;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import it.cnr.isti.wnlab.indoornavigation.IndoorLocalizationStrategy;
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.benchmark.SyntheticFloor;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.DistancesMap;
+import it.cnr.isti.wnlab.indoornavigation.pdr.PDR;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+import it.cnr.isti.wnlab.indoornavigation.utils.localization.histogramfilter.HistogramFilterStrategy;
+import it.cnr.isti.wnlab.indoornavigation.utils.localization.particlefilter.ParticleFilterStrategy;
+
+/**
+ * Throughput of the engine on a synthetic floor. Every simulated device walks back and forth
+ * along the first corridor, with a magnetic sample per step and a Wifi scan every WIFI_PERIOD
+ * steps. An invocation is a step of every session, up to its new position.
+ * <p>
+ * The sessionSteps counter is the figure to look at: sessions x steps per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EngineBenchmark {
+
+    private static final float STEP_LENGTH = .6f;
+    private static final int LEG_STEPS = 30;
+    private static final int WIFI_PERIOD = 4;
+
+    @Param({"50", "200"})
+    public int sessions;
+
+    // pf for the particle filter, hf for the histogram filter
+    @Param({"pf", "hf"})
+    public String strategy;
+
+    // Particles per session, with the particle filter
+    @Param({"200"})
+    public int particles;
+
+    // Side of the floor, in meters
+    @Param({"30"})
+    public int side;
+
+    private SyntheticFloor floor;
+    private LocalizationEngine engine;
+    private LocalizationEngine.StrategyFactory factory;
+    private LocalizationSession[] opened;
+    private Random random;
+    private int iteration;
+    private int step;
+
+    /**
+     * Sessions x steps completed.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long sessionSteps;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            sessionSteps = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        floor = new SyntheticFloor(side);
+        engine = new LocalizationEngine(
+                floor.getFloorMap(), floor.getWifiMap(), floor.getMagneticMap(), STEP_LENGTH);
+        if(strategy.equals("hf"))
+            factory = histogramFactory();
+        else if(strategy.equals("pf"))
+            factory = particleFactory();
+        else
+            throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        random = new Random(42);
+    }
+
+    @TearDown
+    public void shutdown() {
+        engine.shutdown();
+    }
+
+    /**
+     * Every iteration starts with new sessions.
+     */
+    @Setup(Level.Iteration)
+    public void openSessions() {
+        opened = new LocalizationSession[sessions];
+        for(int s = 0; s < sessions; s++)
+            opened[s] = engine.openSession(
+                    "device-" + iteration + "-" + s, floor.getStart(), 0.f, factory);
+        iteration++;
+        step = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeSessions() {
+        for(LocalizationSession session : opened)
+            engine.closeSession(session.getId());
+    }
+
+    @Benchmark
+    public void step(Counters counters) {
+        // East for a leg, then back west
+        float heading = ((step / LEG_STEPS) % 2 == 0 ? 0.f : (float) Math.PI);
+        XYPosition truth = truth(step);
+        long time = step * 500L;
+        for(LocalizationSession session : opened) {
+            session.onHeading(heading + (float) random.nextGaussian() * .1f, time);
+            session.onMagneticField(floor.magneticField(truth.x, truth.y, random, time));
+            if(step % WIFI_PERIOD == 0)
+                session.onWifiScan(floor.scan(truth.x, truth.y, random, time));
+            session.onStep(time);
+        }
+        step++;
+
+        // Wait for the positions of this step
+        for(LocalizationSession session : opened) {
+            while(session.getPositionsCount() < step) {
+                if(session.getFailure() != null)
+                    throw session.getFailure();
+                Thread.yield();
+            }
+        }
+        counters.sessionSteps += sessions;
+    }
+
+    private XYPosition truth(int step) {
+        XYPosition start = floor.getStart();
+        int leg = step % (2 * LEG_STEPS);
+        return new XYPosition(
+                start.x + STEP_LENGTH * (leg < LEG_STEPS ? leg : 2 * LEG_STEPS - leg), start.y);
+    }
+
+    private LocalizationEngine.StrategyFactory particleFactory() {
+        return new LocalizationEngine.StrategyFactory() {
+            @Override
+            public IndoorLocalizationStrategy create(
+                    XYPosition initialPosition, PDR pdr,
+                    DistancesMap<XYPosition, AccessPoints> wifiDistances,
+                    DistancesMap<XYPosition, MagneticField> magneticDistances) {
+                ParticleFilterStrategy strategy = new ParticleFilterStrategy(
+                        initialPosition, particles, floor.getFloorMap(), STEP_LENGTH, pdr,
+                        floor.getWifiMap(), wifiDistances, floor.getMagneticMap(), magneticDistances);
+                strategy.setLikelihoodWeighting(true);
+                return strategy;
+            }
+        };
+    }
+
+    private LocalizationEngine.StrategyFactory histogramFactory() {
+        return new LocalizationEngine.StrategyFactory() {
+            @Override
+            public IndoorLocalizationStrategy create(
+                    XYPosition initialPosition, PDR pdr,
+                    DistancesMap<XYPosition, AccessPoints> wifiDistances,
+                    DistancesMap<XYPosition, MagneticField> magneticDistances) {
+                return new HistogramFilterStrategy(initialPosition, floor.getFloorMap(),
+                        .25f, .3f, pdr, wifiDistances, magneticDistances);
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package it.cnr.isti.wnlab.indoornavigation.fingerprint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.benchmark.SyntheticFloor;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+
+/**
+ * Distances and K-NN queries on the fingerprint maps of a synthetic floor. Every invocation
+ * takes the next of MEASUREMENTS measurements, taken at random positions.
+ * The *SortAll benchmarks are the baseline of findNearestK: a PositionDistance for every row,
+ * then a full sort and the first K.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FingerprintBenchmark {
+
+    private static final int MEASUREMENTS = 256;
+
+    private static final Comparator<PositionDistance<XYPosition>> BY_DISTANCE =
+            new Comparator<PositionDistance<XYPosition>>() {
+                @Override
+                public int compare(PositionDistance<XYPosition> p1, PositionDistance<XYPosition> p2) {
+                    return p1.compareTo(p2);
+                }
+            };
+
+    // Side of the floor, in meters
+    @Param({"30", "100"})
+    public int side;
+
+    @Param({"3", "10"})
+    public int k;
+
+    private WifiFingerprintMap wifiMap;
+    private MagneticFingerprintMap magneticMap;
+    private DistancesMap<XYPosition, AccessPoints> wifiDistances;
+    private DistancesMap<XYPosition, MagneticField> magneticDistances;
+
+    private AccessPoints[] scans;
+    private MagneticField[] fields;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        SyntheticFloor floor = new SyntheticFloor(side);
+        wifiMap = floor.getWifiMap();
+        magneticMap = floor.getMagneticMap();
+        wifiDistances = new DistancesMap<>(wifiMap, k, null);
+        magneticDistances = new DistancesMap<>(magneticMap, k, null);
+
+        Random random = new Random(42);
+        scans = new AccessPoints[MEASUREMENTS];
+        fields = new MagneticField[MEASUREMENTS];
+        for(int i = 0; i < MEASUREMENTS; i++) {
+            XYPosition p = floor.randomPosition(random);
+            scans[i] = floor.scan(p.x, p.y, random, i);
+            fields[i] = floor.magneticField(p.x, p.y, random, i);
+        }
+    }
+
+    private int next() {
+        next = (next + 1) % MEASUREMENTS;
+        return next;
+    }
+
+    @Benchmark
+    public float wifiDistanceBetween() {
+        int i = next();
+        return wifiMap.distanceBetween(scans[i], scans[(i + 1) % MEASUREMENTS]);
+    }
+
+    @Benchmark
+    public List<PositionDistance<XYPosition>> wifiFindNearestK() {
+        return wifiMap.findNearestK(scans[next()], k, null);
+    }
+
+    @Benchmark
+    public List<PositionDistance<XYPosition>> magneticFindNearestK() {
+        return magneticMap.findNearestK(fields[next()], k, null);
+    }
+
+    @Benchmark
+    public List<PositionDistance<XYPosition>> wifiSortAll() {
+        return firstK(wifiMap.getDistancedPoints(scans[next()], null));
+    }
+
+    @Benchmark
+    public List<PositionDistance<XYPosition>> magneticSortAll() {
+        return firstK(magneticMap.getDistancedPoints(fields[next()], null));
+    }
+
+    private List<PositionDistance<XYPosition>> firstK(List<PositionDistance<XYPosition>> distances) {
+        Collections.sort(distances, BY_DISTANCE);
+        return (distances.size() <= k ? distances : distances.subList(0, k));
+    }
+
+    /**
+     * A new scan, then its K-NN (computed lazily on the first call).
+     */
+    @Benchmark
+    public List<PositionDistance<XYPosition>> wifiGetDistances() {
+        wifiDistances.notify(scans[next()]);
+        return wifiDistances.getDistances();
+    }
+
+    @Benchmark
+    public List<PositionDistance<XYPosition>> magneticGetDistances() {
+        magneticDistances.notify(fields[next()]);
+        return magneticDistances.getDistances();
+    }
+}
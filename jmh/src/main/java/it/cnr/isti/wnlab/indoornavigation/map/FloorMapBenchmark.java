@@ -0,0 +1,85 @@
+package it.cnr.isti.wnlab.indoornavigation.map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import it.cnr.isti.wnlab.indoornavigation.benchmark.SyntheticFloor;
+
+/**
+ * Position and move checks on a synthetic floor, at uniformly random points of its square
+ * (so both valid and invalid ones). Moves are steps of 0.6m in a random direction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FloorMapBenchmark {
+
+    private static final int POINTS = 4096;
+    private static final float STEP_LENGTH = .6f;
+
+    // Side of the floor, in meters
+    @Param({"30", "100"})
+    public int side;
+
+    private FloorMap floorMap;
+    private float[] x;
+    private float[] y;
+    private float[] dx;
+    private float[] dy;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        floorMap = new SyntheticFloor(side).getFloorMap();
+
+        Random random = new Random(42);
+        x = new float[POINTS];
+        y = new float[POINTS];
+        dx = new float[POINTS];
+        dy = new float[POINTS];
+        for(int i = 0; i < POINTS; i++) {
+            x[i] = random.nextFloat() * side;
+            y[i] = random.nextFloat() * side;
+            double heading = random.nextDouble() * 2 * Math.PI;
+            dx[i] = (float) (STEP_LENGTH * Math.cos(heading));
+            dy[i] = (float) (STEP_LENGTH * Math.sin(heading));
+        }
+
+        // Build the lazy structures outside the measurement
+        floorMap.getOccupancyGrid();
+        floorMap.getWallMap();
+    }
+
+    private int next() {
+        next = (next + 1) % POINTS;
+        return next;
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        int i = next();
+        return floorMap.isValid(x[i], y[i]);
+    }
+
+    @Benchmark
+    public boolean isValidMove() {
+        int i = next();
+        return floorMap.isValidMove(x[i], y[i], x[i] + dx[i], y[i] + dy[i]);
+    }
+}
@@ -0,0 +1,54 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.localization.kalmanfilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A predict/update cycle of the AbstractKalmanFilter, through the 2D filter used by
+ * KalmanFilterStrategy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class KalmanFilterBenchmark {
+
+    private static final int MEASUREMENTS = 256;
+
+    private StupidKalmanFilter kf;
+    private float[] u;
+    private float[][] z;
+    private int next;
+
+    @Setup
+    public void setup() {
+        kf = new StupidKalmanFilter();
+        u = new float[2];
+
+        Random random = new Random(42);
+        z = new float[MEASUREMENTS][];
+        for(int i = 0; i < MEASUREMENTS; i++)
+            z[i] = new float[] { random.nextFloat() * 30.f, random.nextFloat() * 30.f };
+    }
+
+    @Benchmark
+    public float[] predictUpdate() {
+        next = (next + 1) % MEASUREMENTS;
+        kf.predict(u);
+        kf.update(z[next]);
+        return kf.getStateVector();
+    }
+}
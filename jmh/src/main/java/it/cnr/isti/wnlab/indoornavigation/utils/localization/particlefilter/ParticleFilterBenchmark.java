@@ -0,0 +1,110 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.localization.particlefilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import it.cnr.isti.wnlab.indoornavigation.IndoorPosition;
+import it.cnr.isti.wnlab.indoornavigation.XYPosition;
+import it.cnr.isti.wnlab.indoornavigation.benchmark.SyntheticFloor;
+import it.cnr.isti.wnlab.indoornavigation.fingerprint.DistancesMap;
+import it.cnr.isti.wnlab.indoornavigation.observer.AbstractEmitter;
+import it.cnr.isti.wnlab.indoornavigation.pdr.PDR;
+import it.cnr.isti.wnlab.indoornavigation.types.Heading;
+import it.cnr.isti.wnlab.indoornavigation.types.Step;
+import it.cnr.isti.wnlab.indoornavigation.types.environmental.MagneticField;
+import it.cnr.isti.wnlab.indoornavigation.types.wifi.AccessPoints;
+import it.cnr.isti.wnlab.indoornavigation.utils.pdr.FixedStepPDR;
+
+/**
+ * A full epoch of the particle filter (update, likelihood weighting, resampling and position)
+ * as run on every step by ParticleFilterStrategy. The walk goes back and forth along the first
+ * corridor of a synthetic floor; Wifi and magnetic K-NN are taken once at the start, so that
+ * their cost stays out of the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParticleFilterBenchmark {
+
+    private static final float STEP_LENGTH = .6f;
+    private static final int LEG_STEPS = 10;
+    private static final int K = 3;
+
+    @Param({"200", "2000", "20000"})
+    public int particles;
+
+    // Side of the floor, in meters
+    @Param({"30"})
+    public int side;
+
+    private SyntheticFloor floor;
+    private PDR pdr;
+    private DistancesMap<XYPosition, AccessPoints> wifiDistances;
+    private DistancesMap<XYPosition, MagneticField> magneticDistances;
+
+    private ParticleFilterStrategy strategy;
+    private int step;
+
+    @Setup
+    public void setup() throws IOException {
+        floor = new SyntheticFloor(side);
+
+        // PDR results are passed to the strategy directly
+        pdr = new FixedStepPDR(new IdleEmitter<Heading>(), new IdleEmitter<Step>(), STEP_LENGTH, 0.f);
+
+        XYPosition start = floor.getStart();
+        Random random = new Random(42);
+        wifiDistances = new DistancesMap<>(floor.getWifiMap(), K, null);
+        wifiDistances.notify(floor.scan(start.x, start.y, random, 0));
+        magneticDistances = new DistancesMap<>(floor.getMagneticMap(), K, null);
+        magneticDistances.notify(floor.magneticField(start.x, start.y, random, 0));
+    }
+
+    /**
+     * Every iteration starts from the same particles.
+     */
+    @Setup(Level.Iteration)
+    public void createStrategy() {
+        strategy = new ParticleFilterStrategy(
+                floor.getStart(), particles, floor.getFloorMap(), STEP_LENGTH, pdr,
+                floor.getWifiMap(), wifiDistances, floor.getMagneticMap(), magneticDistances);
+        strategy.setLikelihoodWeighting(true);
+        strategy.setSeed(42);
+        step = 0;
+    }
+
+    @Benchmark
+    public IndoorPosition epoch() {
+        // East for a leg, then back west
+        boolean east = ((step++ / LEG_STEPS) % 2 == 0);
+        float heading = (east ? 0.f : (float) Math.PI);
+        strategy.notify(new PDR.Result(0.f, (east ? STEP_LENGTH : -STEP_LENGTH), heading, step));
+        return strategy.getCurrentPosition();
+    }
+
+    private static class IdleEmitter<T> extends AbstractEmitter<T> {
+
+        @Override
+        protected void startEmission() {}
+
+        @Override
+        protected void stopEmission() {}
+    }
+}
@@ -0,0 +1,51 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.math;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.random.Well19937c;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Standard normal samples per second: commons-math's NormalDistribution over Well19937c (the
+ * particle filter's sampler before GaussianSampler) against the ziggurat over xoroshiro128++.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GaussianSamplerBenchmark {
+
+    private static final long SEED = 42;
+
+    private NormalDistribution normal;
+    private GaussianSampler ziggurat;
+
+    @Setup
+    public void setup() {
+        normal = new NormalDistribution(new Well19937c(SEED), 0., 1.,
+                NormalDistribution.DEFAULT_INVERSE_ABSOLUTE_ACCURACY);
+        ziggurat = new GaussianSampler(new RandomStream(SEED));
+    }
+
+    @Benchmark
+    public double commonsMathNormal() {
+        return normal.sample();
+    }
+
+    @Benchmark
+    public double zigguratXoroshiro() {
+        return ziggurat.nextGaussian();
+    }
+}
@@ -0,0 +1,67 @@
+package it.cnr.isti.wnlab.indoornavigation.utils.stepdetection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import it.cnr.isti.wnlab.indoornavigation.observer.AbstractEmitter;
+import it.cnr.isti.wnlab.indoornavigation.types.inertial.Acceleration;
+
+/**
+ * Step detection on a synthetic walk: 2 steps per second sampled at 50Hz, with noise.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StepDetectorBenchmark {
+
+    private static final int SAMPLES = 50 * 60;
+    private static final float SAMPLING_RATE = 50.f;
+    private static final float STEP_FREQUENCY = 2.f;
+
+    private FasterStepDetector detector;
+    private Acceleration[] accelerations;
+    private int next;
+
+    @Setup
+    public void setup() {
+        // The accelerometer isn't used: samples are passed to the detector directly
+        detector = new FasterStepDetector(new AbstractEmitter<Acceleration>() {
+            @Override
+            protected void startEmission() {}
+
+            @Override
+            protected void stopEmission() {}
+        });
+
+        Random random = new Random(42);
+        accelerations = new Acceleration[SAMPLES];
+        for(int i = 0; i < SAMPLES; i++) {
+            double phase = 2 * Math.PI * STEP_FREQUENCY * i / SAMPLING_RATE;
+            accelerations[i] = new Acceleration(
+                    (float) (.5 * Math.sin(phase / 2) + random.nextGaussian() * .2),
+                    (float) (.3 * Math.cos(phase) + random.nextGaussian() * .2),
+                    (float) (9.81 + 2.5 * Math.sin(phase) + random.nextGaussian() * .3),
+                    3.f, i * 20L);
+        }
+    }
+
+    @Benchmark
+    public void notifyAcceleration() {
+        next = (next + 1) % SAMPLES;
+        detector.notify(accelerations[next]);
+    }
+}